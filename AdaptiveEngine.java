@@ -0,0 +1,113 @@
+import java.util.List;
+
+/**
+ * Engine which moves between a LazyEngine and a FibonacciEngine as the
+ * ratio of updates to queries in the input changes. Between two queries
+ * the lazy engine costs one array write per update and one scan of every
+ * keyword for the query, while the heap costs more per update but only
+ * visits about K nodes per query. So the lazy engine wins when there are
+ * more updates between two queries than keywords.
+ *
+ * At each query the number of updates since the previous query is added
+ * to a moving average. The engine turns lazy when the average goes above
+ * the number of keywords and back to the heap when it goes below a quarter
+ * of it; the gap keeps it from switching back and forth. A switch rebuilds
+ * the other representation in one linear pass, which costs about as much
+ * as one lazy query.
+ */
+public class AdaptiveEngine implements KeywordEngine {
+
+    private static final double LAZY_RATIO = 1.0;      // updates per query per keyword above which the engine turns lazy
+    private static final double HEAP_RATIO = 0.25;     // and below which it goes back to the heap
+    private static final double AVERAGE_WEIGHT = 0.25;     // weight of the last query in the moving average
+
+    private final KeywordDictionary dictionary;
+    private LazyEngine lazy;            // null while the heap is used
+    private FibonacciEngine fibonacci;  // null while the lazy engine is used
+    private int keywordCount;
+    private int idLimit;                // one more than the largest id added
+
+    private long updates;               // updates since the last query
+    private double updatesPerQuery = -1;    // moving average, -1 before the first query
+    private int switches;
+
+    public AdaptiveEngine(KeywordDictionary dictionary){
+        this.dictionary = dictionary;
+        // nothing is known before the first query, and inputs often start with many updates
+        this.lazy = new LazyEngine(dictionary);
+    }
+
+    @Override
+    public void add(int id, int frequency){
+        if(lazy != null){
+            int size = lazy.size();
+            lazy.add(id, frequency);
+            keywordCount += lazy.size() - size;
+        }else{
+            if(fibonacci.getNode(id) == null)
+                ++keywordCount;
+            fibonacci.add(id, frequency);
+        }
+        idLimit = Math.max(idLimit, id + 1);
+        ++updates;
+    }
+
+    @Override
+    public List<Node> topK(int K){
+        updatesPerQuery = updatesPerQuery < 0 ? updates
+                : (1 - AVERAGE_WEIGHT) * updatesPerQuery + AVERAGE_WEIGHT * updates;
+        updates = 0;
+
+        if(lazy != null && updatesPerQuery < HEAP_RATIO * keywordCount)
+            useHeap();
+        else if(fibonacci != null && updatesPerQuery > LAZY_RATIO * keywordCount)
+            useLazy();
+
+        return lazy != null ? lazy.topK(K) : fibonacci.topK(K);
+    }
+
+    /**
+     * @return  -   true if the counts are in the lazy engine
+     */
+    public boolean isLazy(){
+        return lazy != null;
+    }
+
+    /**
+     * @return  -   number of times the engine changed representation
+     */
+    public int getSwitches(){
+        return switches;
+    }
+
+    /**
+     * Builds a heap from the flat counts. Every keyword becomes a root
+     * child, without any insert or meld.
+     */
+    private void useHeap(){
+        fibonacci = new FibonacciEngine(dictionary, idLimit);
+        Node[] nodes = new Node[lazy.size()];
+        for(int i = 0; i < nodes.length; ++i){
+            int id = lazy.getId(i);
+            nodes[i] = new Node(dictionary, id, lazy.getFrequency(id));
+            fibonacci.setNode(id, nodes[i]);
+        }
+        fibonacci.getHeap().load(nodes, new int[nodes.length], nodes.length);
+        lazy = null;
+        ++switches;
+    }
+
+    /**
+     * Copies the frequencies of the heap nodes into flat counts.
+     */
+    private void useLazy(){
+        lazy = new LazyEngine(dictionary);
+        for(int id = 0; id < idLimit; ++id){
+            Node node = fibonacci.getNode(id);
+            if(node != null)
+                lazy.add(id, node.getFrequency());
+        }
+        fibonacci = null;
+        ++switches;
+    }
+}
@@ -0,0 +1,128 @@
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32C;
+
+/**
+ * Buffered reader of varints and bytes from a channel which keeps the
+ * CRC32C of the consumed bytes. Used by the binary file formats.
+ */
+class BinaryInput {
+
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    final FileChannel channel;
+    final CRC32C checksum = new CRC32C();
+
+    BinaryInput(FileChannel channel){
+        this.channel = channel;
+        buffer.flip();
+    }
+
+    /**
+     * Makes sure that at least count bytes are in the buffer, count <= BUFFER_SIZE.
+     */
+    void require(int count) throws IOException{
+        if(buffer.remaining() >= count)
+            return;
+
+        consumed();
+        buffer.compact();
+        while(buffer.position() < count){
+            if(channel.read(buffer) < 0)
+                throw new EOFException("file is truncated");
+        }
+        buffer.flip();
+    }
+
+    /**
+     * Adds the bytes read from the buffer so far to the checksum.
+     */
+    void consumed(){
+        checksum.update(buffer.duplicate().flip());
+    }
+
+    int readVarint() throws IOException{
+        // a varint has at most 5 bytes, so away from the end of the buffer no refill is needed
+        boolean buffered = buffer.remaining() >= 5;
+        int value = 0;
+        for(int shift = 0; shift < 35; shift += 7){
+            if(!buffered)
+                require(1);
+            byte b = buffer.get();
+            value |= (b & 0x7f) << shift;
+            if(b >= 0)
+                return value;
+        }
+        throw new IOException("file has an invalid varint");
+    }
+
+    int readZigzag() throws IOException{
+        int zigzag = readVarint();
+        return (zigzag >>> 1) ^ -(zigzag & 1);
+    }
+
+    int readInt() throws IOException{
+        require(4);
+        return buffer.getInt();
+    }
+
+    byte readByte() throws IOException{
+        require(1);
+        return buffer.get();
+    }
+
+    void read(byte[] bytes, int length) throws IOException{
+        int offset = 0;
+        while(offset < length){
+            require(1);
+            int count = Math.min(buffer.remaining(), length - offset);
+            buffer.get(bytes, offset, count);
+            offset += count;
+        }
+    }
+
+    /**
+     * Checks the checksum in the last 4 bytes of the file against every byte
+     * before it, without moving the channel position. Called before the
+     * records are read, so that nothing of a corrupt or truncated file is used.
+     */
+    static void checkFile(FileChannel channel, File file) throws IOException{
+        long end = channel.size() - 4;
+        if(end < 0)
+            throw new IOException(file + " is corrupted, checksum does not match");
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        CRC32C checksum = new CRC32C();
+        for(long position = 0; position < end; ){
+            buffer.clear().limit((int) Math.min(BUFFER_SIZE, end - position));
+            int read = channel.read(buffer, position);
+            if(read < 0)
+                throw new EOFException("file is truncated");
+            position += read;
+            checksum.update(buffer.flip());
+        }
+
+        buffer.clear().limit(4);
+        while(buffer.hasRemaining()){
+            if(channel.read(buffer, end + buffer.position()) < 0)
+                throw new EOFException("file is truncated");
+        }
+        if(buffer.flip().getInt() != (int) checksum.getValue())
+            throw new IOException(file + " is corrupted, checksum does not match");
+    }
+
+    /**
+     * Checks the checksum at the end of the file against the bytes read before it.
+     */
+    void verifyChecksum(File file) throws IOException{
+        consumed();
+        int expected = (int) checksum.getValue();
+        int stored = readInt();
+        if(stored != expected || buffer.hasRemaining() || channel.position() != channel.size())
+            throw new IOException(file + " is corrupted, checksum does not match");
+    }
+}
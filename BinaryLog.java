@@ -0,0 +1,243 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Binary form of the input file, for logs which are replayed many times.
+ * Replaying it needs no text parsing, and a keyword is hashed only once
+ * per file instead of once per line.
+ *
+ * The file has a header (magic, version), the keyword table (varint count,
+ * then each keyword as varint length and bytes, in the order of first use),
+ * the records, and a CRC32C of everything before it. A keyword line is the
+ * varint of (keyword index << 1) followed by the zigzag varint frequency.
+ * Any other record is the varint of (kind << 1 | 1): a query is followed by
+ * the zigzag varint K, a prefix query by the zigzag varint K and the prefix
+ * as varint length and bytes, a count or rank query by the keyword as varint
+ * length and bytes, a threshold query by the zigzag varint threshold, and
+ * the end record, written for a stop line or the end of the text, is last.
+ *
+ * Usage: java BinaryLog text_file binary_file
+ */
+public class BinaryLog {
+
+    private static final int MAGIC = 0x4b57434c;    // "KWCL"
+    private static final byte VERSION = 1;
+
+    private static final int QUERY = 0;             // kinds of the records other than keyword lines
+    private static final int PREFIX_QUERY = 1;
+    private static final int END = 2;
+    private static final int COUNT_QUERY = 3;
+    private static final int RANK_QUERY = 4;
+    private static final int THRESHOLD_QUERY = 5;
+
+    public static void main(String[] args) throws IOException{
+        if(args.length != 2){
+            System.out.print("Usage: java BinaryLog text_file binary_file");
+            return;
+        }
+
+        File textFile = new File(args[0]);
+        File binaryFile = new File(args[1]);
+        long start = System.nanoTime();
+        int keywords = convert(textFile, binaryFile);
+        System.out.printf("%d keywords, %.1f MB to %.1f MB in %.2f s%n", keywords, textFile.length() / 1e6,
+                binaryFile.length() / 1e6, (System.nanoTime() - start) / 1e9);
+    }
+
+    /**
+     * Tells if the file starts like a binary log.
+     */
+    public static boolean isBinaryLog(File file) throws IOException{
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)){
+            ByteBuffer magic = ByteBuffer.allocate(4);
+            channel.read(magic, 0);
+            return !magic.hasRemaining() && magic.getInt(0) == MAGIC;
+        }
+    }
+
+    /**
+     * Converts an input file in the text format. The records are first
+     * written to a temporary file next to the binary file, since the
+     * keyword table is only known at the end of the text.
+     * @param textFile  -   input file in the text format
+     * @param binaryFile    -   binary log, replaced if it exists
+     * @return  -   number of distinct keywords
+     */
+    public static int convert(File textFile, File binaryFile) throws IOException{
+        KeywordDictionary dictionary = new KeywordDictionary();
+        File recordFile = new File(binaryFile.getPath() + ".records");
+
+        try{
+            try (FileChannel channel = open(recordFile)){
+                BinaryOutput records = new BinaryOutput(channel);
+                new KeywordParser(new KeywordListener() {
+                    @Override
+                    public void addKeyword(byte[] bytes, int offset, int length, int frequency) throws IOException{
+                        records.writeVarint(dictionary.getOrAdd(bytes, offset, length) << 1);
+                        records.writeZigzag(frequency);
+                    }
+
+                    @Override
+                    public void query(int K) throws IOException{
+                        records.writeVarint(QUERY << 1 | 1);
+                        records.writeZigzag(K);
+                    }
+
+                    @Override
+                    public void prefixQuery(byte[] bytes, int offset, int length, int K) throws IOException{
+                        records.writeVarint(PREFIX_QUERY << 1 | 1);
+                        records.writeZigzag(K);
+                        records.writeVarint(length);
+                        records.write(bytes, offset, length);
+                    }
+
+                    @Override
+                    public void countQuery(byte[] bytes, int offset, int length) throws IOException{
+                        records.writeVarint(COUNT_QUERY << 1 | 1);
+                        records.writeVarint(length);
+                        records.write(bytes, offset, length);
+                    }
+
+                    @Override
+                    public void rankQuery(byte[] bytes, int offset, int length) throws IOException{
+                        records.writeVarint(RANK_QUERY << 1 | 1);
+                        records.writeVarint(length);
+                        records.write(bytes, offset, length);
+                    }
+
+                    @Override
+                    public void thresholdQuery(int threshold) throws IOException{
+                        records.writeVarint(THRESHOLD_QUERY << 1 | 1);
+                        records.writeZigzag(threshold);
+                    }
+                }).parse(textFile);
+                records.writeVarint(END << 1 | 1);
+                records.flush();
+            }
+
+            try (FileChannel channel = open(binaryFile);
+                 FileChannel recordChannel = FileChannel.open(recordFile.toPath(), StandardOpenOption.READ)){
+                BinaryOutput output = new BinaryOutput(channel);
+                output.buffer.putInt(MAGIC);
+                output.buffer.put(VERSION);
+
+                output.writeVarint(dictionary.size());
+                for(int id = 0; id < dictionary.size(); ++id){
+                    output.writeVarint(dictionary.getLength(id));
+                    output.write(dictionary.getBytes(id), 0, dictionary.getLength(id));
+                }
+
+                // the records go through the output, so the checksum covers them
+                byte[] chunk = new byte[1 << 16];
+                ByteBuffer chunkBuffer = ByteBuffer.wrap(chunk);
+                int read;
+                while((read = recordChannel.read(chunkBuffer.clear())) >= 0)
+                    output.write(chunk, 0, read);
+                output.finish();
+            }
+        }finally{
+            recordFile.delete();
+        }
+        return dictionary.size();
+    }
+
+    /**
+     * Replays the binary log into the listener. A keywordcounter gets the
+     * keyword lines by keyword id: each keyword of the table is looked up in
+     * its dictionary once, and the lines then go to the engine without any
+     * hashing. Any other listener, and a counter which evicts keywords, gets
+     * the keyword bytes from the table and hashes each line as usual, but no
+     * text is parsed.
+     * @param file  -   binary log
+     * @param listener  -   receives the lines
+     */
+    public static void replay(File file, KeywordListener listener) throws IOException{
+        // the ids of evicted keywords are given to other keywords, so they can't be kept for the whole log
+        if(listener instanceof keywordcounter && !((keywordcounter) listener).evicts())
+            replay(file, (keywordcounter) listener, null);
+        else
+            replay(file, null, listener);
+    }
+
+    /**
+     * Replays into the counter by id if it is given, otherwise into the listener.
+     */
+    private static void replay(File file, keywordcounter counter, KeywordListener listener) throws IOException{
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)){
+            // nothing of a corrupt log reaches the listener
+            BinaryInput.checkFile(channel, file);
+            BinaryInput input = new BinaryInput(channel);
+
+            if(input.readInt() != MAGIC)
+                throw new IOException(file + " is not a keyword counter binary log");
+            if(input.readByte() != VERSION)
+                throw new IOException(file + " has an unsupported binary log version");
+
+            // the keywords of the table, by their counter ids or in a dictionary of their own
+            int count = input.readVarint();
+            int[] ids = new int[count];
+            KeywordDictionary table = counter == null ? new KeywordDictionary(count) : null;
+            byte[] bytes = new byte[64];
+            for(int i = 0; i < count; ++i){
+                int length = input.readVarint();
+                if(length > bytes.length)
+                    bytes = new byte[Math.max(length, bytes.length * 2)];
+                input.read(bytes, length);
+                ids[i] = counter != null ? counter.keywordId(bytes, 0, length) : table.getOrAdd(bytes, 0, length);
+            }
+
+            while(true){
+                int header = input.readVarint();
+                if((header & 1) == 0){
+                    int index = header >>> 1;
+                    if(index >= count)
+                        throw new IOException(file + " has a keyword index out of the table");
+                    if(counter != null)
+                        counter.addKeyword(ids[index], input.readZigzag());
+                    else
+                        table.addTo(listener, ids[index], input.readZigzag());
+                    continue;
+                }
+
+                int kind = header >>> 1;
+                if(kind == END)
+                    break;
+
+                KeywordListener target = counter != null ? counter : listener;
+                if(kind == QUERY){
+                    target.query(input.readZigzag());
+                }else if(kind == PREFIX_QUERY){
+                    int K = input.readZigzag();
+                    int length = input.readVarint();
+                    if(length > bytes.length)
+                        bytes = new byte[Math.max(length, bytes.length * 2)];
+                    input.read(bytes, length);
+                    target.prefixQuery(bytes, 0, length, K);
+                }else if(kind == COUNT_QUERY || kind == RANK_QUERY){
+                    int length = input.readVarint();
+                    if(length > bytes.length)
+                        bytes = new byte[Math.max(length, bytes.length * 2)];
+                    input.read(bytes, length);
+                    if(kind == COUNT_QUERY)
+                        target.countQuery(bytes, 0, length);
+                    else
+                        target.rankQuery(bytes, 0, length);
+                }else if(kind == THRESHOLD_QUERY){
+                    target.thresholdQuery(input.readZigzag());
+                }else{
+                    throw new IOException(file + " has an unknown record");
+                }
+            }
+
+            input.verifyChecksum(file);
+        }
+    }
+
+    private static FileChannel open(File file) throws IOException{
+        return FileChannel.open(file.toPath(), StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+    }
+}
@@ -0,0 +1,72 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32C;
+
+/**
+ * Buffered writer of varints and bytes to a channel which keeps the CRC32C
+ * of the written bytes. Used by the binary file formats.
+ */
+class BinaryOutput {
+
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    final FileChannel channel;
+    final CRC32C checksum = new CRC32C();
+
+    BinaryOutput(FileChannel channel){
+        this.channel = channel;
+    }
+
+    void writeVarint(int value) throws IOException{
+        if(buffer.remaining() < 5)
+            flush();
+        while((value & ~0x7f) != 0){
+            buffer.put((byte) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    /**
+     * Writes the value as a zigzag varint, so that small negative values stay short.
+     */
+    void writeZigzag(int value) throws IOException{
+        writeVarint((value << 1) ^ (value >> 31));
+    }
+
+    void write(byte[] bytes) throws IOException{
+        write(bytes, 0, bytes.length);
+    }
+
+    void write(byte[] bytes, int offset, int length) throws IOException{
+        int end = offset + length;
+        while(offset < end){
+            if(!buffer.hasRemaining())
+                flush();
+            int count = Math.min(buffer.remaining(), end - offset);
+            buffer.put(bytes, offset, count);
+            offset += count;
+        }
+    }
+
+    void flush() throws IOException{
+        buffer.flip();
+        checksum.update(buffer.duplicate());
+        while(buffer.hasRemaining())
+            channel.write(buffer);
+        buffer.clear();
+    }
+
+    /**
+     * Writes the checksum of everything before it and flushes.
+     */
+    void finish() throws IOException{
+        flush();
+        buffer.putInt((int) checksum.getValue());
+        buffer.flip();
+        while(buffer.hasRemaining())
+            channel.write(buffer);
+    }
+}
@@ -0,0 +1,186 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Engine keeping the keywords in buckets of equal frequency, as in the
+ * stream summary structure. The buckets form a doubly linked list ordered
+ * by frequency and each bucket has a doubly linked list of its keywords,
+ * all in primitive arrays. Adding a small frequency moves the keyword a few
+ * buckets up, and a query walks down from the highest bucket, so neither
+ * depends on the number of keywords. Adding a large frequency walks over
+ * every bucket in between.
+ */
+public class BucketEngine implements KeywordEngine {
+
+    private static final int NIL = -1;
+    // orders nodes of the same frequency by word
+    private static final Comparator<Node> BY_WORD = Node::compareWord;
+
+    private final KeywordDictionary dictionary;
+
+    // keywords, indexed by keyword id
+    private int[] bucketOf = new int[0];    // bucket of each keyword, NIL if not added
+    private int[] previous = new int[0];    // previous keyword in the same bucket
+    private int[] next = new int[0];        // next keyword in the same bucket
+
+    // buckets, freed buckets are kept in a list linked by higher
+    private int[] frequency = new int[16];
+    private int[] first = new int[16];      // first keyword of each bucket
+    private int[] lower = new int[16];      // bucket with the next smaller frequency
+    private int[] higher = new int[16];     // bucket with the next larger frequency
+    private int bucketCount;
+    private int freeBucket = NIL;
+    private int lowest = NIL;
+    private int highest = NIL;
+
+    public BucketEngine(KeywordDictionary dictionary){
+        this.dictionary = dictionary;
+    }
+
+    @Override
+    public void add(int id, int frequency){
+        if(id >= bucketOf.length){
+            int length = Math.max(bucketOf.length * 2, Math.max(id + 1, 1024));
+            int oldLength = bucketOf.length;
+            bucketOf = Arrays.copyOf(bucketOf, length);
+            previous = Arrays.copyOf(previous, length);
+            next = Arrays.copyOf(next, length);
+            Arrays.fill(bucketOf, oldLength, length, NIL);
+        }
+
+        int bucket = bucketOf[id];
+        if(bucket == NIL){
+            addToBucket(id, bucketFor(NIL, frequency));
+        }else if(frequency != 0){
+            // the new bucket is found before the keyword leaves its bucket, which may be freed
+            int target = bucketFor(bucket, this.frequency[bucket] + frequency);
+            removeFromBucket(id);
+            addToBucket(id, target);
+        }
+    }
+
+    @Override
+    public List<Node> topK(int K){
+        List<Node> topK = new ArrayList<>();
+        // first words of the bucket, the last of them at the head
+        PriorityQueue<Node> selected = new PriorityQueue<>(BY_WORD.reversed());
+
+        for(int bucket = highest; bucket != NIL && topK.size() < K; bucket = lower[bucket]){
+            // keywords of the same frequency are ordered by word, only the remaining number of them is kept
+            int remaining = K - topK.size();
+            for(int id = first[bucket]; id != NIL; id = next[id]){
+                if(selected.size() < remaining){
+                    selected.add(new Node(dictionary, id, frequency[bucket]));
+                }else if(dictionary.compare(id, selected.peek().getKeywordId()) < 0){
+                    selected.poll();
+                    selected.add(new Node(dictionary, id, frequency[bucket]));
+                }
+            }
+
+            Node[] group = new Node[selected.size()];
+            for(int i = group.length - 1; i >= 0; --i)
+                group[i] = selected.poll();
+            topK.addAll(Arrays.asList(group));
+        }
+        return topK;
+    }
+
+    /**
+     * Finds the bucket of the frequency, creating it if there is none.
+     * @param start -   bucket from which the search starts, NIL to start from the closer end
+     * @param frequency -   frequency of the bucket
+     */
+    private int bucketFor(int start, int frequency){
+        if(highest == NIL)
+            return newBucket(frequency, NIL, NIL);
+
+        if(start == NIL)
+            start = (long) frequency - this.frequency[lowest] <= (long) this.frequency[highest] - frequency ? lowest : highest;
+
+        int bucket = start;
+        if(this.frequency[bucket] <= frequency){
+            while(higher[bucket] != NIL && this.frequency[higher[bucket]] <= frequency)
+                bucket = higher[bucket];
+            return this.frequency[bucket] == frequency ? bucket : newBucket(frequency, bucket, higher[bucket]);
+        }else{
+            while(lower[bucket] != NIL && this.frequency[lower[bucket]] >= frequency)
+                bucket = lower[bucket];
+            return this.frequency[bucket] == frequency ? bucket : newBucket(frequency, lower[bucket], bucket);
+        }
+    }
+
+    /**
+     * Creates an empty bucket between the two buckets.
+     */
+    private int newBucket(int frequency, int lowerBucket, int higherBucket){
+        int bucket;
+        if(freeBucket != NIL){
+            bucket = freeBucket;
+            freeBucket = higher[bucket];
+        }else{
+            if(bucketCount == this.frequency.length){
+                int length = bucketCount * 2;
+                this.frequency = Arrays.copyOf(this.frequency, length);
+                first = Arrays.copyOf(first, length);
+                lower = Arrays.copyOf(lower, length);
+                higher = Arrays.copyOf(higher, length);
+            }
+            bucket = bucketCount++;
+        }
+
+        this.frequency[bucket] = frequency;
+        first[bucket] = NIL;
+        lower[bucket] = lowerBucket;
+        higher[bucket] = higherBucket;
+
+        if(lowerBucket == NIL)
+            lowest = bucket;
+        else
+            higher[lowerBucket] = bucket;
+        if(higherBucket == NIL)
+            highest = bucket;
+        else
+            lower[higherBucket] = bucket;
+        return bucket;
+    }
+
+    private void addToBucket(int id, int bucket){
+        bucketOf[id] = bucket;
+        previous[id] = NIL;
+        next[id] = first[bucket];
+        if(first[bucket] != NIL)
+            previous[first[bucket]] = id;
+        first[bucket] = id;
+    }
+
+    /**
+     * Takes the keyword out of its bucket, freeing the bucket if it becomes empty.
+     */
+    private void removeFromBucket(int id){
+        int bucket = bucketOf[id];
+        if(previous[id] != NIL)
+            next[previous[id]] = next[id];
+        else
+            first[bucket] = next[id];
+        if(next[id] != NIL)
+            previous[next[id]] = previous[id];
+
+        if(first[bucket] != NIL)
+            return;
+
+        if(lower[bucket] == NIL)
+            lowest = higher[bucket];
+        else
+            higher[lower[bucket]] = higher[bucket];
+        if(higher[bucket] == NIL)
+            highest = lower[bucket];
+        else
+            lower[higher[bucket]] = lower[bucket];
+
+        higher[bucket] = freeBucket;
+        freeBucket = bucket;
+    }
+}
@@ -0,0 +1,17 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event for an increaseKey() which cut nodes, committed by HeapMetrics.
+ */
+@Name("keywordcounter.CascadingCut")
+@Label("Cascading Cut")
+@Category("Keyword Counter")
+@Description("Nodes moved to the root list by one increaseKey")
+class CascadingCutEvent extends jdk.jfr.Event {
+
+    @Label("Length")
+    int length;
+}
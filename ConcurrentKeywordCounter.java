@@ -0,0 +1,248 @@
+import java.io.Closeable;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Keyword counter which can be updated from many threads. Producers publish
+ * (keyword, frequency) events into a bounded lock-free ring buffer, and one
+ * owner thread drains them in batches into a keywordcounter, which is only
+ * ever touched by that thread. After draining, the owner publishes the top K
+ * as an immutable list, so readers never wait for the owner.
+ *
+ * The ring buffer is a multi producer single consumer queue in which each slot
+ * has a sequence number: a producer claims a position with a CAS on the tail,
+ * writes the slot and then sets its sequence, which is what the owner waits
+ * for. When the ring is full, producers spin, then yield, until the owner
+ * frees a slot.
+ */
+public class ConcurrentKeywordCounter implements Closeable {
+
+    public static final int DEFAULT_CAPACITY = 1 << 16;    // events in the ring buffer
+
+    private static final int BATCH_SIZE = 4096;             // events applied before checking for a publish
+    private static final int FULL_SPINS = 64;               // spins of a producer on a full ring before yielding
+    private static final long IDLE_PARK_NANOS = 50000;      // owner sleep when the ring is empty
+    private static final long PUBLISH_INTERVAL_NANOS = 1000000;     // time between two publishes while busy
+
+    /**
+     * Immutable top K of the counter at some point in time.
+     */
+    public static final class Result {
+        private final List<Node> topK;
+        private final long events;      // number of events applied before the result was taken
+
+        Result(List<Node> topK, long events){
+            this.topK = topK;
+            this.events = events;
+        }
+
+        /**
+         * @return  -   nodes holding the word and the frequency, in TOP_K_ORDER
+         */
+        public List<Node> getTopK(){
+            return topK;
+        }
+
+        public long getEvents(){
+            return events;
+        }
+    }
+
+    private final int mask;
+    private final AtomicLongArray sequences;    // position + 1 when the slot is written, position + capacity when free
+    private final String[] keywords;
+    private final int[] frequencies;
+    private final AtomicLong tail = new AtomicLong();   // next position claimed by a producer
+    private long head;                                  // next position read by the owner
+
+    private final int K;
+    private final keywordcounter counter = new keywordcounter(null);
+    private volatile Result published;
+    private volatile boolean closed;
+    private final Thread owner;
+
+    /**
+     * @param K -   number of words in the published top K
+     */
+    public ConcurrentKeywordCounter(int K){
+        this(K, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param K -   number of words in the published top K
+     * @param capacity  -   events in the ring buffer, rounded up to a power of 2
+     */
+    public ConcurrentKeywordCounter(int K, int capacity){
+        capacity = Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1;
+        this.mask = capacity - 1;
+        this.sequences = new AtomicLongArray(capacity);
+        for(int i = 0; i < capacity; ++i)
+            sequences.set(i, i);
+        this.keywords = new String[capacity];
+        this.frequencies = new int[capacity];
+
+        this.K = K;
+        counter.trackTopK(K);
+        published = new Result(Collections.emptyList(), 0);
+
+        owner = new Thread(this::drain, "keyword-counter-owner");
+        owner.setDaemon(true);
+        owner.start();
+    }
+
+    /**
+     * Adds the frequency to the keyword. Safe to call from any thread. If the
+     * ring buffer is full, waits until the owner thread frees a slot.
+     * @param keyword   -   keyword
+     * @param frequency -   amount by which the frequency is incremented
+     */
+    public void add(String keyword, int frequency){
+        for(int attempt = 0; !tryAdd(keyword, frequency); ++attempt){
+            if(closed)
+                throw new IllegalStateException("counter is closed");
+            // spin briefly, then give the core to the owner thread
+            if(attempt < FULL_SPINS)
+                Thread.onSpinWait();
+            else
+                Thread.yield();
+        }
+    }
+
+    /**
+     * Adds the frequency to the keyword unless the ring buffer is full.
+     * @param keyword   -   keyword
+     * @param frequency -   amount by which the frequency is incremented
+     * @return  -   false if the ring buffer is full
+     */
+    public boolean tryAdd(String keyword, int frequency){
+        long position = tail.get();
+        while(true){
+            int slot = (int) position & mask;
+            long difference = sequences.get(slot) - position;
+
+            if(difference == 0){
+                if(tail.compareAndSet(position, position + 1)){
+                    keywords[slot] = keyword;
+                    frequencies[slot] = frequency;
+                    // the owner reads the slot only after seeing this sequence
+                    sequences.lazySet(slot, position + 1);
+                    return true;
+                }
+                position = tail.get();
+            }else if(difference < 0){
+                // the slot still holds the event of the previous lap
+                return false;
+            }else{
+                // another producer claimed the position
+                position = tail.get();
+            }
+        }
+    }
+
+    /**
+     * Returns the last published top K without waiting.
+     */
+    public Result getResult(){
+        return published;
+    }
+
+    /**
+     * Returns the top K words from the last published result.
+     * @param K -   number of words, at most the K given to the constructor
+     */
+    public List<Node> topK(int K){
+        List<Node> topK = published.getTopK();
+        return topK.subList(0, Math.min(K, topK.size()));
+    }
+
+    /**
+     * Waits until every event added before this call is applied and published.
+     */
+    public void flush(){
+        long events = tail.get();
+        while(published.getEvents() < events){
+            if(!owner.isAlive())
+                throw new IllegalStateException("owner thread has stopped");
+            LockSupport.parkNanos(IDLE_PARK_NANOS);
+        }
+    }
+
+    /**
+     * Applies the remaining events and stops the owner thread.
+     */
+    @Override
+    public void close(){
+        closed = true;
+        try{
+            owner.join();
+        }catch (InterruptedException ie){
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Body of the owner thread.
+     */
+    private void drain(){
+        long lastPublish = System.nanoTime();
+        boolean dirty = false;
+
+        while(true){
+            // read closed before draining, so nothing added before close() is missed
+            boolean closing = closed;
+            int applied = drainBatch();
+            dirty |= applied > 0;
+
+            long now = System.nanoTime();
+            if(dirty && (applied < BATCH_SIZE || now - lastPublish >= PUBLISH_INTERVAL_NANOS)){
+                publish();
+                dirty = false;
+                lastPublish = now;
+            }
+
+            if(applied == 0){
+                if(closing)
+                    return;
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+        }
+    }
+
+    /**
+     * Applies up to BATCH_SIZE events in order.
+     * @return  -   number of events applied
+     */
+    private int drainBatch(){
+        int applied = 0;
+        while(applied < BATCH_SIZE){
+            int slot = (int) head & mask;
+            if(sequences.get(slot) != head + 1)
+                break;
+
+            byte[] bytes = keywords[slot].getBytes(StandardCharsets.UTF_8);
+            int frequency = frequencies[slot];
+            keywords[slot] = null;
+            sequences.lazySet(slot, head + mask + 1);
+            ++head;
+
+            counter.addKeyword(bytes, 0, bytes.length, frequency);
+            ++applied;
+        }
+        return applied;
+    }
+
+    /**
+     * Publishes a copy of the current top K.
+     */
+    private void publish(){
+        List<Node> topK = new ArrayList<>();
+        for(Node node : counter.topK(K))
+            topK.add(new Node(node.getWord(), node.getFrequency()));
+        published = new Result(Collections.unmodifiableList(topK), head);
+    }
+}
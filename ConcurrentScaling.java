@@ -0,0 +1,104 @@
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ *  Measures the throughput of ConcurrentKeywordCounter with 1 to 64 producer
+ *  threads, and of a keywordcounter behind a single lock for comparison.
+ *  The producers add the keywords of a Zipfian workload, and the time runs
+ *  until every event is applied.
+ *
+ *  Usage: java ConcurrentScaling
+ */
+public class ConcurrentScaling {
+
+    private static final int MAX_PRODUCERS = 64;
+    private static final int ROUNDS = 4;            // times each producer adds the workload
+    private static final int QUERY_K = 10;
+
+    public static void main(String[] args) throws InterruptedException{
+        String[] workload = keywords(HeapBenchmark.zipfWorkload());
+        System.out.printf("%d events per run, %d cores%n", workload.length * ROUNDS,
+                Runtime.getRuntime().availableProcessors());
+
+        // warm up
+        runRing(workload, 4);
+        runLocked(workload, 4);
+
+        System.out.println("producers  ring buffer (events/s)  single lock (events/s)");
+        for(int producers = 1; producers <= MAX_PRODUCERS; producers *= 2){
+            double ring = runRing(workload, producers);
+            double locked = runLocked(workload, producers);
+            System.out.printf("%9d  %23.0f  %23.0f%n", producers, ring, locked);
+        }
+    }
+
+    /**
+     * Turns keyword indexes into keywords, creating one String per distinct keyword.
+     */
+    private static String[] keywords(int[] indexes){
+        Map<Integer, String> words = new HashMap<>();
+        String[] keywords = new String[indexes.length];
+        for(int i = 0; i < indexes.length; ++i)
+            keywords[i] = words.computeIfAbsent(indexes[i], index -> "keyword" + index);
+        return keywords;
+    }
+
+    private static double runRing(String[] workload, int producers) throws InterruptedException{
+        try (ConcurrentKeywordCounter counter = new ConcurrentKeywordCounter(QUERY_K)){
+            long start = System.nanoTime();
+            runProducers(workload, producers, keyword -> counter.add(keyword, 1));
+            counter.flush();
+            long time = System.nanoTime() - start;
+
+            check(counter.topK(QUERY_K));
+            return workload.length * (double) ROUNDS * 1e9 / time;
+        }
+    }
+
+    private static double runLocked(String[] workload, int producers) throws InterruptedException{
+        keywordcounter counter = new keywordcounter(null);
+        long start = System.nanoTime();
+        runProducers(workload, producers, keyword -> {
+            byte[] bytes = keyword.getBytes();
+            synchronized (counter){
+                counter.addKeyword(bytes, 0, bytes.length, 1);
+            }
+        });
+        long time = System.nanoTime() - start;
+
+        check(counter.topK(QUERY_K));
+        return workload.length * (double) ROUNDS * 1e9 / time;
+    }
+
+    interface Producer {
+        void add(String keyword);
+    }
+
+    /**
+     * Splits the workload between the producer threads, each going over its part ROUNDS times.
+     */
+    private static void runProducers(String[] workload, int producers, Producer producer) throws InterruptedException{
+        Thread[] threads = new Thread[producers];
+        for(int p = 0; p < producers; ++p){
+            int from = (int) ((long) workload.length * p / producers);
+            int to = (int) ((long) workload.length * (p + 1) / producers);
+            threads[p] = new Thread(() -> {
+                for(int round = 0; round < ROUNDS; ++round)
+                    for(int i = from; i < to; ++i)
+                        producer.add(workload[i]);
+            });
+            threads[p].start();
+        }
+        for(Thread thread : threads)
+            thread.join();
+    }
+
+    /**
+     * The most frequent keyword of the Zipfian workload is keyword0.
+     */
+    private static void check(List<Node> topK){
+        if(topK.isEmpty() || !topK.get(0).getWord().equals("keyword0"))
+            throw new IllegalStateException("unexpected top keyword " + topK);
+    }
+}
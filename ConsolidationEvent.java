@@ -0,0 +1,29 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * JFR event for one pairwise combine of the root list, committed by HeapMetrics.
+ */
+@Name("keywordcounter.Consolidation")
+@Label("Heap Consolidation")
+@Category("Keyword Counter")
+@Description("Pairwise combine of the root list of MaxFibonacciHeap")
+class ConsolidationEvent extends jdk.jfr.Event {
+
+    @Label("Root List Size")
+    int rootListSize;
+
+    @Label("Max Degree")
+    int maxDegree;
+
+    @Label("Operation")
+    @Description("Heap operation which consolidated: removeMax, remove, decreaseKey or consolidate")
+    String operation;
+
+    @Label("Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long time;
+}
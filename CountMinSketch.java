@@ -0,0 +1,55 @@
+/**
+ * Count-Min sketch over keyword hashes. The estimate of a keyword is
+ * never smaller than its true count. With epsilon = e / width and N the
+ * total count, the overestimate is at most epsilon * N with probability
+ * at least 1 - e^(-depth).
+ */
+public class CountMinSketch {
+
+    private final int width;
+    private final int depth;
+    private final long[] counts;    // depth rows of width counters
+
+    /**
+     * @param width -   counters in each row
+     * @param depth -   number of rows
+     */
+    public CountMinSketch(int width, int depth){
+        this.width = width;
+        this.depth = depth;
+        this.counts = new long[width * depth];
+    }
+
+    /**
+     * Creates a sketch of 4 rows whose width gives the relative error epsilon.
+     * @param epsilon   -   relative error
+     */
+    public static CountMinSketch withError(double epsilon){
+        return new CountMinSketch((int) Math.ceil(Math.E / epsilon), 4);
+    }
+
+    /**
+     * Adds the frequency to the keyword and returns its new estimate.
+     * @param hash  -   KeywordDictionary.hash() of the keyword
+     * @param frequency -   amount added to the keyword
+     */
+    public long add(int hash, int frequency){
+        long estimate = Long.MAX_VALUE;
+        int second = Integer.rotateLeft(hash, 16) | 1;
+
+        for(int row = 0; row < depth; ++row){
+            int column = (int) ((Integer.toUnsignedLong(hash + row * second) * width) >>> 32);
+            int index = row * width + column;
+            counts[index] += frequency;
+            estimate = Math.min(estimate, counts[index]);
+        }
+        return estimate;
+    }
+
+    /**
+     * @return  -   number of bytes used by the counters
+     */
+    public long memory(){
+        return counts.length * 8L;
+    }
+}
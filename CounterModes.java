@@ -0,0 +1,184 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import javax.management.JMException;
+
+/**
+ * The ways keywordcounter runs: counting one input file, merging the
+ * counts of several files, or serving a counter on a port. Each mode picks
+ * the counter the options ask for and leaves the features to
+ * CounterOptions.configure(). Errors are reported on the standard output,
+ * as the program always did.
+ */
+public class CounterModes {
+
+    private static final File OUTPUT_FILE = new File("output_file.txt");
+
+    /**
+     * Counts the input file, writing the answers of its queries to the output file.
+     * @param options   -   options of the run
+     * @param inputFile -   input file, or binary log
+     */
+    public static void count(CounterOptions options, File inputFile){
+        try{
+            options.checkInput();
+        }catch (IllegalArgumentException iae){
+            System.out.println(iae.getMessage());
+            return;
+        }
+        if(!inputFile.exists()){
+            System.out.println(inputFile + " file doesn't exist!");
+            return;
+        }
+
+        try (BufferedWriter fileWriter = new BufferedWriter(new FileWriter(OUTPUT_FILE, StandardCharsets.UTF_8))){
+            // the parser passes every line to the counter
+            if(options.approximate > 0){
+                SpaceSavingCounter counter = new SpaceSavingCounter(options.approximate, options.sketch, fileWriter);
+                System.err.println(counter.getCapacity() + " counters, " + counter.memory() + " bytes");
+                parse(counter, inputFile, options.parsers);
+            }else if(options.shards > 1){
+                try (ShardedKeywordCounter counter = new ShardedKeywordCounter(options.shards, fileWriter)){
+                    if(options.prefix > 0)
+                        counter.indexPrefixes(options.prefix);
+                    if(options.rank)
+                        counter.indexRanks();
+                    if(options.evicts())
+                        counter.limitKeywords(options.maxKeywords, options.maxMemory);
+                    parse(counter, inputFile, options.parsers);
+                }
+            }else{
+                keywordcounter counter = new keywordcounter(fileWriter);
+                options.configure(counter);
+                HeapMetrics metrics = options.measure ? counter.measure() : null;
+                if(metrics != null)
+                    metrics.register(inputFile.getName());
+
+                parse(counter, inputFile, options.parsers);
+
+                if(options.coalesce > 0)
+                    System.err.println(counter.getKeywordLines() + " keyword lines, "
+                            + counter.getHeapOperations() + " heap operations");
+                if(options.evicts())
+                    System.err.println(counter.getEvictions() + " keywords evicted, "
+                            + counter.getKeywordCount() + " kept");
+                if(options.save != null)
+                    counter.saveSnapshot(options.save, options.shape);
+                if(metrics != null)
+                    System.err.println(metrics.report());
+            }
+        }catch (IOException | JMException e){
+            System.out.println(e.getMessage());
+        }
+    }
+
+    /**
+     * Counts each input file on its own thread, merges the counters and
+     * writes the top K words of all files to the output file. The query
+     * lines of the input files are ignored.
+     * @param fileNames -   input files
+     * @param K -   number of words to write
+     */
+    public static void merge(String[] fileNames, int K){
+        for(String fileName : fileNames){
+            if(!new File(fileName).exists()){
+                System.out.println(fileName + " file doesn't exist!");
+                return;
+            }
+        }
+
+        int threads = Math.min(fileNames.length, Runtime.getRuntime().availableProcessors());
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+        try (BufferedWriter fileWriter = new BufferedWriter(new FileWriter(OUTPUT_FILE, StandardCharsets.UTF_8))){
+            List<Future<keywordcounter>> counters = new ArrayList<>();
+            for(String fileName : fileNames){
+                counters.add(executor.submit(() -> {
+                    // a counter without a writer ignores the query lines
+                    keywordcounter counter = new keywordcounter(null);
+                    new KeywordParser(counter).parse(new File(fileName));
+                    return counter;
+                }));
+            }
+
+            keywordcounter merged = new keywordcounter(fileWriter);
+            for(Future<keywordcounter> counter : counters)
+                merged.merge(counter.get());
+            merged.query(K);
+        }catch (IOException ioe){
+            System.out.println(ioe.getMessage());
+        }catch (ExecutionException ee){
+            System.out.println(ee.getCause().getMessage());
+        }catch (InterruptedException ie){
+            Thread.currentThread().interrupt();
+        }finally{
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Serves a counter on the port of the options until the process is
+     * stopped, saving the snapshot of the options then.
+     * @param options   -   options of the run
+     */
+    public static void serve(CounterOptions options){
+        try{
+            options.checkServer();
+        }catch (IllegalArgumentException iae){
+            System.out.println(iae.getMessage());
+            return;
+        }
+
+        try{
+            // a counter without a writer, the answers go back to the clients
+            keywordcounter counter = new keywordcounter(null);
+            options.configure(counter);
+            if(options.measure)
+                counter.measure().register("server");
+
+            KeywordServer server = new KeywordServer(counter, options.server);
+            System.err.println("Listening on port " + server.getPort());
+
+            // the counter lives as long as the process, so it is saved when the process is stopped
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                server.close();
+                if(options.save != null){
+                    try{
+                        server.saveSnapshot(options.save, options.shape);
+                    }catch (IOException ioe){
+                        System.err.println(ioe.getMessage());
+                    }
+                }
+            }));
+
+            server.serve();
+        }catch (IOException | JMException e){
+            System.out.println(e.getMessage());
+        }
+    }
+
+    /**
+     * Parses the input file into the listener, or replays it if it is a
+     * binary log, which a keywordcounter gets by keyword id. This is the
+     * only place which tells a binary log from a text file.
+     * @param listener  -   receives the keyword lines and the queries
+     * @param inputFile -   input file
+     * @param parsers   -   number of parsing threads, 1 parses on the calling thread
+     */
+    static void parse(KeywordListener listener, File inputFile, int parsers) throws IOException{
+        if(BinaryLog.isBinaryLog(inputFile))
+            BinaryLog.replay(inputFile, listener);
+        else if(parsers > 1)
+            new ParallelKeywordParser(listener, parsers).parse(inputFile);
+        else
+            new KeywordParser(listener).parse(inputFile);
+    }
+}
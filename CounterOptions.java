@@ -0,0 +1,212 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Command line options of keywordcounter. parse() reads the options, which
+ * come before the input files, and the checks tell which options can't be
+ * combined in each mode, so both can be used without running a counter.
+ * configure() then sets up a counter with the features the options ask for.
+ */
+public class CounterOptions {
+
+    static final String USAGE = "Usage: keywordcounter [--parsers N] [--shards N | --coalesce N] [--track K] [--approximate EPSILON [--sketch]] [--load FILE] [--save FILE [--shape]] [--engine fib|bucket|pairing|lazy|adaptive] [--prefix N] [--ranks] [--max-keywords N] [--max-memory MB] [--window LINES [--epochs N] | --decay HALF_LIFE] [--metrics] input_file"
+            + "\n       keywordcounter --merge K input_file..."
+            + "\n       keywordcounter [--engine NAME] [--coalesce N] [--track K] [--load FILE] [--save FILE [--shape]] [--prefix N] [--ranks] [--max-keywords N] [--max-memory MB] [--window LINES [--epochs N] | --decay HALF_LIFE] [--metrics] --server PORT";
+
+    int shards = 1;         // number of threads counting the keywords
+    int parsers = 1;        // number of threads parsing the input
+    int coalesce = 0;       // distinct keywords buffered between heap updates, 0 for none
+    int track = 0;          // K of the standing top K query, 0 for none
+    double approximate = 0; // error bound of the approximate counter, 0 for exact counting
+    boolean sketch = false; // whether the approximate counter uses a Count-Min sketch
+    File load = null;       // snapshot read before the input, null for none
+    File save = null;       // snapshot written after the input, null for none
+    boolean shape = false;  // whether the snapshot keeps the heap shape
+    int merge = 0;          // K of the query after merging several input files, 0 for one file
+    String engine = "fib";  // engine keeping the frequencies ordered
+    int prefix = 0;         // keywords cached per trie node for prefix queries, 0 for no prefix queries
+    boolean measure = false;    // whether the operations are measured and reported
+    boolean rank = false;   // whether count, rank and threshold queries are answered
+    int maxKeywords = 0;    // keywords kept before the coldest are evicted, 0 for no limit
+    long maxMemory = 0;     // estimated bytes kept before the coldest keywords are evicted, 0 for no limit
+    int window = 0;         // keyword lines in the sliding window, 0 to count every line
+    int epochs = 8;         // epochs the sliding window is made of, at least 1
+    double decay = 0;       // half-life of the counts in keyword lines, 0 for no decay
+    int server = 0;         // port of the server mode, 0 to count one input file
+    String[] files;         // arguments after the options
+
+    /**
+     * Reads the options. They come before the input files; the last
+     * argument is never taken as an option, except as the value of one.
+     * @param args  -   command line arguments
+     * @return  -   the options, with the remaining arguments in files
+     * @throws IllegalArgumentException -   for an unknown option or a value which is not a number
+     */
+    public static CounterOptions parse(String[] args){
+        CounterOptions options = new CounterOptions();
+        int argument = 0;
+
+        while(argument < args.length - 1 && args[argument].startsWith("--")){
+            String option = args[argument++];
+
+            // the flags take no value
+            if(option.equals("--sketch")){
+                options.sketch = true;
+                continue;
+            }else if(option.equals("--ranks")){
+                options.rank = true;
+                continue;
+            }else if(option.equals("--metrics")){
+                options.measure = true;
+                continue;
+            }else if(option.equals("--shape")){
+                options.shape = true;
+                continue;
+            }
+
+            String value = args[argument++];
+            if(option.equals("--shards")){
+                options.shards = Integer.parseInt(value);
+            }else if(option.equals("--parsers")){
+                options.parsers = Integer.parseInt(value);
+            }else if(option.equals("--coalesce")){
+                options.coalesce = Integer.parseInt(value);
+            }else if(option.equals("--track")){
+                options.track = Integer.parseInt(value);
+            }else if(option.equals("--approximate")){
+                options.approximate = Double.parseDouble(value);
+            }else if(option.equals("--load")){
+                options.load = new File(value);
+            }else if(option.equals("--save")){
+                options.save = new File(value);
+            }else if(option.equals("--merge")){
+                options.merge = Integer.parseInt(value);
+            }else if(option.equals("--engine")){
+                options.engine = value;
+            }else if(option.equals("--prefix")){
+                options.prefix = Integer.parseInt(value);
+            }else if(option.equals("--max-keywords")){
+                options.maxKeywords = Integer.parseInt(value);
+            }else if(option.equals("--max-memory")){
+                options.maxMemory = Long.parseLong(value) << 20;
+            }else if(option.equals("--window")){
+                options.window = Integer.parseInt(value);
+            }else if(option.equals("--epochs")){
+                options.epochs = Math.max(Integer.parseInt(value), 1);
+            }else if(option.equals("--decay")){
+                options.decay = Double.parseDouble(value);
+            }else if(option.equals("--server")){
+                options.server = Integer.parseInt(value);
+            }else{
+                throw new IllegalArgumentException("Unknown option " + option);
+            }
+        }
+
+        options.files = Arrays.copyOfRange(args, argument, args.length);
+        return options;
+    }
+
+    /**
+     * @return  -   whether the coldest keywords are evicted
+     */
+    public boolean evicts(){
+        return maxKeywords > 0 || maxMemory > 0;
+    }
+
+    /**
+     * @return  -   whether old counts expire out of a window or decay
+     */
+    public boolean expires(){
+        return window > 0 || decay > 0;
+    }
+
+    /**
+     * @return  -   keyword lines in one epoch of the window
+     */
+    public int epochLines(){
+        return Math.max((window + epochs - 1) / epochs, 1);
+    }
+
+    /**
+     * Checks that the options work together for one input file.
+     * @throws IllegalArgumentException -   telling which options can't be combined
+     */
+    public void checkInput(){
+        reject((load != null || save != null) && (approximate > 0 || shards > 1),
+                "Snapshots need the exact counter with one shard");
+        reject(measure && (approximate > 0 || shards > 1),
+                "Metrics need the exact counter with one shard");
+        reject((prefix > 0 || rank || evicts() || expires()) && approximate > 0,
+                "Prefix and rank queries, eviction, windows and decay need the exact counter");
+        reject(evicts() && (track > 0 || prefix > 0 || coalesce > 0 || parsers > 1),
+                "Eviction does not work with --track, --prefix, --coalesce or --parsers");
+        checkEngine(shards > 1, "Snapshots, tracking, shards, eviction, windows and decay need the fib engine");
+        reject(expires() && (shards > 1 || parsers > 1 || evicts() || load != null || save != null),
+                "Windows and decay do not work with --shards, --parsers, eviction or snapshots");
+        checkDecay();
+    }
+
+    /**
+     * Checks that the options work together for the server.
+     * @throws IllegalArgumentException -   telling which options can't be combined
+     */
+    public void checkServer(){
+        reject(approximate > 0 || shards > 1 || parsers > 1,
+                "The server needs the exact counter with one shard and one parser");
+        checkEngine(false, "Snapshots, tracking, eviction, windows and decay need the fib engine");
+        reject(evicts() && (track > 0 || prefix > 0 || coalesce > 0),
+                "Eviction does not work with --track, --prefix or --coalesce");
+        reject(expires() && (evicts() || load != null || save != null),
+                "Windows and decay do not work with eviction or snapshots");
+        checkDecay();
+    }
+
+    /**
+     * Checks the engine name, and that only the fib engine is asked for the
+     * features which need it.
+     * @param sharded   -   whether the counter is sharded
+     * @param message   -   error when a feature needs the fib engine
+     */
+    private void checkEngine(boolean sharded, String message){
+        reject(!KeywordEngine.NAMES.contains(engine), "Unknown engine " + engine);
+        reject(!engine.equals("fib") && (load != null || save != null || track > 0 || sharded || evicts() || expires()),
+                message);
+    }
+
+    private void checkDecay(){
+        reject(decay > 0 && (window > 0 || rank || prefix > 0 || track > 0),
+                "Decay does not work with --window, --ranks, --prefix or --track");
+    }
+
+    private static void reject(boolean conflict, String message){
+        if(conflict)
+            throw new IllegalArgumentException(message);
+    }
+
+    /**
+     * Sets up the features of an exact counter, in the order they depend on
+     * each other: the engine, the snapshot, the indexes, then the way the
+     * lines are applied.
+     * @param counter   -   new, empty counter
+     */
+    public void configure(keywordcounter counter) throws IOException{
+        counter.useEngine(engine);
+        if(load != null)
+            counter.loadSnapshot(load);
+        if(prefix > 0)
+            counter.indexPrefixes(prefix);
+        if(rank)
+            counter.indexRanks();
+        if(coalesce > 0)
+            counter.coalesceIncrements(coalesce);
+        if(track > 0)
+            counter.trackTopK(track);
+        if(evicts())
+            counter.limitKeywords(maxKeywords, maxMemory);
+        if(window > 0)
+            counter.slideWindow(epochLines(), epochs);
+        if(decay > 0)
+            counter.decayCounts(decay);
+    }
+}
@@ -0,0 +1,99 @@
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ *  Compares the KeywordEngine implementations on a few workloads:
+ *  small increments over uniform and Zipfian keywords with rare queries,
+ *  large increments, frequent queries for the top 100, and a single query
+ *  at the end of the input.
+ *
+ *  Usage: java EngineComparison
+ */
+public class EngineComparison {
+
+    private static final int WARMUP_ITERATIONS = 2;
+    private static final int ITERATIONS = 3;
+
+    private static long blackhole;      // keeps results from being optimized away
+
+    /**
+     * Keywords added by a workload, one frequency per keyword, and the queries between them.
+     */
+    private static final class Workload {
+        final String name;
+        final int[] ids;
+        final int[] frequencies;
+        final int queryInterval;        // keyword updates between two queries
+        final int queryK;
+
+        Workload(String name, int[] ids, int[] frequencies, int queryInterval, int queryK){
+            this.name = name;
+            this.ids = ids;
+            this.frequencies = frequencies;
+            this.queryInterval = queryInterval;
+            this.queryK = queryK;
+        }
+    }
+
+    public static void main(String[] args){
+        KeywordDictionary dictionary = new KeywordDictionary(HeapBenchmark.NODES);
+        for(int i = 0; i < HeapBenchmark.NODES; ++i){
+            byte[] keyword = ("keyword" + i).getBytes(StandardCharsets.UTF_8);
+            dictionary.getOrAdd(keyword, 0, keyword.length);
+        }
+
+        int[] uniform = HeapBenchmark.uniformWorkload();
+        int[] zipf = HeapBenchmark.zipfWorkload();
+        int[] ones = new int[zipf.length];
+        int[] large = new int[zipf.length];
+        Random random = new Random(3);
+        for(int i = 0; i < zipf.length; ++i){
+            ones[i] = 1;
+            large[i] = 1 + random.nextInt(100000);
+        }
+
+        Workload[] workloads = {
+            new Workload("uniform +1", uniform, ones, 100000, 10),
+            new Workload("zipf +1", zipf, ones, 100000, 10),
+            new Workload("zipf large", zipf, large, 100000, 10),
+            new Workload("zipf queries", zipf, ones, 1000, 100),
+            new Workload("zipf one query", zipf, ones, zipf.length, 10),
+        };
+
+        System.out.printf("%-14s", "ops/s");
+        for(String engine : KeywordEngine.NAMES)
+            System.out.printf(" %14s", engine);
+        System.out.println();
+        for(Workload workload : workloads){
+            System.out.printf("%-14s", workload.name);
+            for(String engine : KeywordEngine.NAMES)
+                System.out.printf(" %14.0f", run(workload, engine, dictionary));
+            System.out.println();
+        }
+        if(blackhole == 42)
+            System.out.println();
+    }
+
+    /**
+     * Runs the workload on a new engine in each iteration.
+     * @return  -   updates per second of the best iteration
+     */
+    private static double run(Workload workload, String engineName, KeywordDictionary dictionary){
+        long best = Long.MAX_VALUE;
+        for(int iteration = 0; iteration < WARMUP_ITERATIONS + ITERATIONS; ++iteration){
+            KeywordEngine engine = KeywordEngine.create(engineName, dictionary);
+
+            long start = System.nanoTime();
+            for(int i = 0; i < workload.ids.length; ++i){
+                engine.add(workload.ids[i], workload.frequencies[i]);
+                if(i % workload.queryInterval == workload.queryInterval - 1)
+                    blackhole += engine.topK(workload.queryK).size();
+            }
+            long time = System.nanoTime() - start;
+
+            if(iteration >= WARMUP_ITERATIONS)
+                best = Math.min(best, time);
+        }
+        return workload.ids.length * 1e9 / best;
+    }
+}
@@ -0,0 +1,134 @@
+import java.util.Arrays;
+
+/**
+ * Min-side index of the keywords, which finds the coldest keyword to evict
+ * without scanning: the keyword with the lowest frequency, and of those the
+ * one touched least recently. It is a binary min heap of keyword ids in
+ * parallel int arrays, with the position of each id in the heap, so that a
+ * touched keyword is moved in O(log n). Each touch takes the next tick, so
+ * the order never depends on the keywords.
+ */
+public class EvictionIndex {
+
+    private int[] heap = new int[1024];         // keyword ids, the coldest first
+    private int[] position = new int[1024];     // position + 1 of each keyword id in heap, 0 if not indexed
+    private int[] frequency = new int[1024];    // frequency of each keyword id
+    private long[] touched = new long[1024];    // tick of the last touch of each keyword id
+    private int size;
+    private long tick;
+
+    /**
+     * Sets the frequency of the keyword and makes it the most recently
+     * touched, indexing the keyword if it is new.
+     * @param id    -   keyword id
+     * @param frequency -   new frequency of the keyword
+     */
+    public void touch(int id, int frequency){
+        if(id >= position.length){
+            int length = Math.max(position.length * 2, id + 1);
+            position = Arrays.copyOf(position, length);
+            this.frequency = Arrays.copyOf(this.frequency, length);
+            touched = Arrays.copyOf(touched, length);
+        }
+
+        boolean warmer = frequency >= this.frequency[id];
+        this.frequency[id] = frequency;
+        touched[id] = ++tick;
+
+        if(position[id] == 0){
+            if(size == heap.length)
+                heap = Arrays.copyOf(heap, size * 2);
+            heap[size] = id;
+            position[id] = ++size;
+            siftUp(size - 1);
+        }else if(warmer){
+            siftDown(position[id] - 1);
+        }else{
+            siftUp(position[id] - 1);
+        }
+    }
+
+    /**
+     * Removes and returns the coldest keyword.
+     * @return  -   keyword id, -1 if no keyword is indexed
+     */
+    public int poll(){
+        if(size == 0)
+            return -1;
+        int id = heap[0];
+        remove(id);
+        return id;
+    }
+
+    /**
+     * Removes the keyword from the index if it is indexed.
+     * @param id    -   keyword id
+     */
+    public void remove(int id){
+        if(id >= position.length || position[id] == 0)
+            return;
+
+        int index = position[id] - 1;
+        position[id] = 0;
+        frequency[id] = 0;
+        if(index == --size)
+            return;
+
+        // the last keyword fills the hole and is moved to its place
+        int moved = heap[size];
+        move(moved, index);
+        siftUp(index);
+        if(position[moved] == index + 1)
+            siftDown(index);
+    }
+
+    /**
+     * @return  -   number of keywords indexed
+     */
+    public int size(){
+        return size;
+    }
+
+    private void siftUp(int index){
+        int id = heap[index];
+        while(index > 0){
+            int parent = (index - 1) >>> 1;
+            if(!colder(id, heap[parent]))
+                break;
+            move(heap[parent], index);
+            index = parent;
+        }
+        move(id, index);
+    }
+
+    private void siftDown(int index){
+        int id = heap[index];
+        while(true){
+            int child = 2 * index + 1;
+            if(child >= size)
+                break;
+            if(child + 1 < size && colder(heap[child + 1], heap[child]))
+                ++child;
+            if(!colder(heap[child], id))
+                break;
+            move(heap[child], index);
+            index = child;
+        }
+        move(id, index);
+    }
+
+    private void move(int id, int index){
+        heap[index] = id;
+        position[id] = index + 1;
+    }
+
+    /**
+     * Tells if the keyword is evicted before the other: it has a lower
+     * frequency, or the same frequency and an older touch.
+     */
+    private boolean colder(int id, int otherId){
+        if(frequency[id] != frequency[otherId])
+            return frequency[id] < frequency[otherId];
+        return touched[id] < touched[otherId];
+    }
+}
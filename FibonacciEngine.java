@@ -0,0 +1,83 @@
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Engine keeping one MaxFibonacciHeap node per keyword: a new keyword is
+ * inserted and a known one gets increaseKey(), or decreaseKey() for a
+ * negative frequency. A query consolidates the root list, which changes
+ * the shape of the heap but no frequency, and reads the top K without
+ * removing them.
+ */
+public class FibonacciEngine implements KeywordEngine {
+
+    private final MaxFibonacciHeap heap = new MaxFibonacciHeap();
+    private final KeywordDictionary dictionary;
+    private Node[] idToNode;                // heap node of each keyword id
+
+    public FibonacciEngine(KeywordDictionary dictionary){
+        this(dictionary, 1024);
+    }
+
+    /**
+     * @param dictionary    -   dictionary giving the keyword ids
+     * @param expectedSize  -   number of keywords expected
+     */
+    public FibonacciEngine(KeywordDictionary dictionary, int expectedSize){
+        this.dictionary = dictionary;
+        this.idToNode = new Node[Math.max(expectedSize, 1024)];
+    }
+
+    @Override
+    public void add(int id, int frequency){
+        if(id < idToNode.length && idToNode[id] != null){
+            // increment word count by frequency
+            if(frequency >= 0)
+                heap.increaseKey(idToNode[id], frequency);
+            else
+                heap.decreaseKey(idToNode[id], -frequency);
+        }else{
+            // normal insert at the top level, the word stays in the dictionary
+            setNode(id, new Node(dictionary, id, frequency));
+            heap.insert(idToNode[id]);
+        }
+    }
+
+    @Override
+    public List<Node> topK(int K){
+        // consolidate the root list so that the query only visits a few trees
+        heap.consolidate();
+        return heap.topK(K);
+    }
+
+    /**
+     * Removes the keyword from the heap.
+     * @param id    -   keyword id
+     */
+    public void remove(int id){
+        Node node = getNode(id);
+        if(node == null)
+            return;
+        heap.remove(node);
+        idToNode[id] = null;
+    }
+
+    /**
+     * @return  -   heap node of the keyword, null if the keyword is not in the heap
+     */
+    public Node getNode(int id){
+        return id < idToNode.length ? idToNode[id] : null;
+    }
+
+    /**
+     * Sets the heap node of the keyword. The caller links the node into the heap.
+     */
+    public void setNode(int id, Node node){
+        if(id >= idToNode.length)
+            idToNode = Arrays.copyOf(idToNode, Math.max(idToNode.length * 2, id + 1));
+        idToNode[id] = node;
+    }
+
+    public MaxFibonacciHeap getHeap(){
+        return heap;
+    }
+}
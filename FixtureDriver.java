@@ -0,0 +1,174 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ *  Runs an input file through a component which keywordcounter has no option
+ *  for, and writes output_file.txt the same way, so that run_fixtures.sh
+ *  covers it like the options of keywordcounter. Only "$keyword frequency"
+ *  and query lines are read.
+ *
+ *  primitive:  counts in IntMaxFibonacciHeap, keyed by KeywordDictionary ids
+ *              and with ties broken by the keyword bytes.
+ *  ranges:     parses with ParallelKeywordParser in ranges of RANGE_SIZE bytes,
+ *              so that lines and query segments are split between ranges, into
+ *              a counter with prefix and rank indexes.
+ *  concurrent: feeds a ConcurrentKeywordCounter from PRODUCERS threads, which
+ *              share the keyword lines between two queries; each query waits
+ *              for them and for the owner to apply every event. K is at most
+ *              CONCURRENT_K.
+ *  view:       takes a VersionedCounts view at each query but answers all of
+ *              them at the end, after every later line was counted, so each
+ *              answer has to come from the point in time of its query.
+ *
+ *  Usage: java FixtureDriver primitive|ranges|concurrent|view input_file
+ */
+public class FixtureDriver {
+
+    private static final int RANGE_SIZE = 64;       // bytes parsed by one task in ranges mode
+    private static final int PARSERS = 2;           // threads parsing the ranges
+    private static final int PRODUCERS = 3;         // threads adding the keyword lines in concurrent mode
+    private static final int CONCURRENT_K = 100;    // largest query of the concurrent mode
+
+    public static void main(String[] args) throws IOException, InterruptedException{
+        if(args.length != 2 || !Arrays.asList("primitive", "ranges", "concurrent", "view").contains(args[0])){
+            System.out.println("Usage: java FixtureDriver primitive|ranges|concurrent|view input_file");
+            return;
+        }
+
+        try (BufferedWriter fileWriter = new BufferedWriter(new FileWriter("output_file.txt", StandardCharsets.UTF_8))){
+            File inputFile = new File(args[1]);
+            if(args[0].equals("primitive")){
+                new KeywordParser(new PrimitiveListener(fileWriter)).parse(inputFile);
+            }else if(args[0].equals("concurrent")){
+                concurrent(inputFile, fileWriter);
+            }else if(args[0].equals("view")){
+                views(inputFile, fileWriter);
+            }else{
+                keywordcounter counter = new keywordcounter(fileWriter);
+                counter.indexPrefixes(2);
+                counter.indexRanks();
+                new ParallelKeywordParser(counter, PARSERS, RANGE_SIZE).parse(inputFile);
+            }
+        }
+    }
+
+    /**
+     * Counts the keywords in an IntMaxFibonacciHeap, with the handle of each keyword id kept in an array.
+     */
+    private static final class PrimitiveListener implements KeywordListener {
+        private final BufferedWriter fileWriter;
+        private final KeywordDictionary dictionary = new KeywordDictionary();
+        private final IntMaxFibonacciHeap heap = new IntMaxFibonacciHeap();
+        private int[] handles = new int[1024];      // heap handle of each keyword id
+        private int[] ids = new int[1024];          // keyword id of each heap handle
+
+        PrimitiveListener(BufferedWriter fileWriter){
+            this.fileWriter = fileWriter;
+        }
+
+        @Override
+        public void addKeyword(byte[] bytes, int offset, int length, int frequency){
+            int count = dictionary.keywordCount();
+            int id = dictionary.getOrAdd(bytes, offset, length);
+            if(dictionary.keywordCount() == count){
+                heap.increaseKey(handles[id], frequency);
+                return;
+            }
+
+            int handle = heap.insert(frequency);
+            if(id >= handles.length)
+                handles = Arrays.copyOf(handles, Math.max(handles.length * 2, id + 1));
+            if(handle >= ids.length)
+                ids = Arrays.copyOf(ids, Math.max(ids.length * 2, handle + 1));
+            handles[id] = handle;
+            ids[handle] = id;
+        }
+
+        @Override
+        public void query(int K) throws IOException{
+            List<Node> topK = new ArrayList<>();
+            for(int handle : heap.topK(K, (node, otherNode) -> dictionary.compare(ids[node], ids[otherNode])))
+                topK.add(new Node(dictionary, ids[handle], heap.getFrequency(handle)));
+            keywordcounter.writeOutput(topK, fileWriter);
+        }
+    }
+
+    /**
+     * Shares the keyword lines between two queries among the producer threads.
+     */
+    private static void concurrent(File inputFile, BufferedWriter fileWriter) throws IOException, InterruptedException{
+        List<String> keywords = new ArrayList<>();
+        List<Integer> frequencies = new ArrayList<>();
+        List<Integer> queries = new ArrayList<>();
+        List<Integer> queryLines = new ArrayList<>();     // keyword lines before each query
+
+        new KeywordParser(new KeywordListener(){
+            @Override
+            public void addKeyword(byte[] bytes, int offset, int length, int frequency){
+                keywords.add(new String(bytes, offset, length, StandardCharsets.UTF_8));
+                frequencies.add(frequency);
+            }
+
+            @Override
+            public void query(int K){
+                queries.add(K);
+                queryLines.add(keywords.size());
+            }
+        }).parse(inputFile);
+
+        try (ConcurrentKeywordCounter counter = new ConcurrentKeywordCounter(CONCURRENT_K)){
+            int added = 0;
+            for(int query = 0; query < queries.size(); ++query){
+                int start = added;
+                int end = queryLines.get(query);
+                Thread[] producers = new Thread[PRODUCERS];
+                for(int p = 0; p < PRODUCERS; ++p){
+                    int first = start + p;
+                    producers[p] = new Thread(() -> {
+                        for(int line = first; line < end; line += PRODUCERS)
+                            counter.add(keywords.get(line), frequencies.get(line));
+                    });
+                    producers[p].start();
+                }
+                for(Thread producer : producers)
+                    producer.join();
+                added = end;
+
+                counter.flush();
+                keywordcounter.writeOutput(counter.topK(queries.get(query)), fileWriter);
+            }
+        }
+    }
+
+    /**
+     * Answers every query from the view taken at its line, once the whole input is counted.
+     */
+    private static void views(File inputFile, BufferedWriter fileWriter) throws IOException{
+        keywordcounter counter = new keywordcounter(null);
+        counter.keepVersionedCounts();
+        List<VersionedCounts.View> views = new ArrayList<>();
+        List<Integer> queries = new ArrayList<>();
+
+        new KeywordParser(new KeywordListener(){
+            @Override
+            public void addKeyword(byte[] bytes, int offset, int length, int frequency){
+                counter.addKeyword(bytes, offset, length, frequency);
+            }
+
+            @Override
+            public void query(int K){
+                views.add(counter.view());
+                queries.add(K);
+            }
+        }).parse(inputFile);
+
+        for(int query = 0; query < queries.size(); ++query)
+            keywordcounter.writeOutput(views.get(query).topK(queries.get(query)), fileWriter);
+    }
+}
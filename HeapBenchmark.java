@@ -0,0 +1,503 @@
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.function.Supplier;
+
+/**
+ *  Benchmark suite for the heap operations and the end-to-end counter.
+ *
+ *  Each heap benchmark runs against MaxFibonacciHeap and IntMaxFibonacciHeap
+ *  under uniform, Zipfian and adversarial workloads (long cascading cut chains,
+ *  wide root lists). For every benchmark the suite prints the throughput, the
+ *  bytes allocated per operation (the same number as the allocation rate of a
+ *  GC profiler, normalized per operation) and latency percentiles.
+ *
+ *  This is not JMH, so the numbers are indicative only. It follows the same
+ *  rules by hand: each benchmark runs in FORKS fresh JVMs so that the profile
+ *  of one benchmark never shapes the code of the next, each fork runs warmup
+ *  iterations before the measured ones, and every operation returns a value
+ *  which goes into a sink printed at the end, so no work is dead code. The
+ *  throughput is the mean of the forks with the spread between them.
+ *
+ *  Usage: java HeapBenchmark [--forks N] [name filter]
+ *  Only the benchmarks whose name contains the filter are run. With
+ *  --forks 0 they run in this JVM, one after the other.
+ */
+public class HeapBenchmark {
+
+    static final int NODES = 1 << 20;                   // nodes in the heap for most benchmarks
+    private static final int OPERATIONS = 1 << 20;      // operations in one iteration
+    private static final int WARMUP_ITERATIONS = 5;
+    private static final int ITERATIONS = 5;
+    private static final int FORKS = 3;                 // JVMs each benchmark runs in
+    private static final int QUERY_K = 10;
+    private static final int WIDE_HEAPS = 256;          // heaps consolidated by the root list benchmark
+    private static final double ZIPF_EXPONENT = 1.0;
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    /**
+     * Operations of a heap backend, nodes are addressed by int handles.
+     * increaseKey() returns the new frequency and consolidate() the max
+     * frequency, so that every operation has a result for the sink.
+     */
+    interface Heap {
+        int insert(int frequency);
+        int increaseKey(int node, int frequency);
+        int removeMax();
+        void reinsert(int node);
+        int consolidate();
+        int topK(int k);
+        int depth(int node);
+    }
+
+    /**
+     * Benchmark state: setup() runs before every iteration and is not measured.
+     * The value returned by operation() goes into the sink.
+     */
+    interface Benchmark {
+        void setup();
+        int operation(int i);
+    }
+
+    interface BenchmarkFactory {
+        Benchmark create(Supplier<Heap> newHeap);
+    }
+
+    private static final class ObjectHeap implements Heap {
+        private final MaxFibonacciHeap heap = new MaxFibonacciHeap();
+        private Node[] nodes = new Node[1024];
+        private int size;
+        private final Node[] removed = new Node[64];    // nodes returned by removeMax()
+        private int removedCount;
+
+        public int insert(int frequency){
+            if(size == nodes.length)
+                nodes = Arrays.copyOf(nodes, size * 2);
+            nodes[size] = heap.insert("", frequency);
+            return size++;
+        }
+        public int increaseKey(int node, int frequency){
+            heap.increaseKey(nodes[node], frequency);
+            return nodes[node].getFrequency();
+        }
+        public int removeMax(){
+            // the handle is only used for reinsert(), so the last few removed nodes are kept
+            int index = removedCount++ & (removed.length - 1);
+            removed[index] = heap.removeMax();
+            return -1 - index;
+        }
+        public void reinsert(int node){ heap.insert(removed[-1 - node]); }
+        public int consolidate(){
+            heap.consolidate();
+            return heap.getMax().getFrequency();
+        }
+        public int topK(int k){ return heap.topK(k).size(); }
+        public int depth(int node){
+            int depth = 0;
+            for(Node parent = nodes[node].getParent(); !heap.isRoot(parent); parent = parent.getParent())
+                ++depth;
+            return depth;
+        }
+    }
+
+    private static final class PrimitiveHeap implements Heap {
+        private final IntMaxFibonacciHeap heap = new IntMaxFibonacciHeap();
+
+        public int insert(int frequency){ return heap.insert(frequency); }
+        public int increaseKey(int node, int frequency){
+            heap.increaseKey(node, frequency);
+            return heap.getFrequency(node);
+        }
+        public int removeMax(){ return heap.removeMax(); }
+        public void reinsert(int node){ heap.insertNode(node); }
+        public int consolidate(){
+            heap.consolidate();
+            return heap.getFrequency(heap.getMax());
+        }
+        public int topK(int k){ return heap.topK(k, Integer::compare).length; }
+        public int depth(int node){
+            int depth = 0;
+            for(int parent = heap.getParent(node); parent != IntMaxFibonacciHeap.ROOT; parent = heap.getParent(parent))
+                ++depth;
+            return depth;
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException{
+        if(args.length == 3 && args[0].equals("--fork")){
+            // one benchmark on one heap, in a JVM started by the parent
+            System.out.println(measure(args[1], args[2]));
+            return;
+        }
+
+        int forks = FORKS;
+        String filter = "";
+        for(int argument = 0; argument < args.length; ++argument){
+            if(args[argument].equals("--forks"))
+                forks = Integer.parseInt(args[++argument]);
+            else
+                filter = args[argument];
+        }
+
+        List<String> names = new ArrayList<>();
+        define(names, new ArrayList<>(), new ArrayList<>());
+        names.add("keywordcounter/endToEnd");
+
+        System.out.printf("Indicative numbers, not JMH: %s, %d warmup and %d measured iterations each%n",
+                forks == 0 ? "in this JVM" : forks + " forks", WARMUP_ITERATIONS, ITERATIONS);
+        System.out.printf("%-30s %-20s %14s %7s %12s %10s %10s %10s%n",
+                "benchmark", "heap", "ops/s", "spread", "bytes/op", "p50 ns", "p99 ns", "p99.9 ns");
+
+        long sink = 0;
+        for(String name : names){
+            if(!name.contains(filter))
+                continue;
+            if(name.startsWith("keywordcounter")){
+                sink += report(name, "MaxFibonacciHeap", forks);
+            }else{
+                sink += report(name, "MaxFibonacciHeap", forks);
+                sink += report(name, "IntMaxFibonacciHeap", forks);
+            }
+        }
+        // printing the sink keeps the results of every operation alive
+        System.out.println("sink " + sink);
+    }
+
+    /**
+     * Adds every heap benchmark with the number of operations of one iteration.
+     */
+    private static void define(List<String> names, List<BenchmarkFactory> factories, List<Integer> operations){
+        int[] uniform = uniformWorkload();
+        int[] zipf = zipfWorkload();
+
+        names.add("insert");
+        operations.add(OPERATIONS);
+        factories.add(newHeap -> new Benchmark(){
+            Heap heap;
+            public void setup(){ heap = newHeap.get(); }
+            public int operation(int i){ return heap.insert(uniform[i]); }
+        });
+
+        names.add("increaseKey/uniform");
+        operations.add(OPERATIONS);
+        factories.add(newHeap -> increaseKeys(newHeap, uniform));
+
+        names.add("increaseKey/zipf");
+        operations.add(OPERATIONS);
+        factories.add(newHeap -> increaseKeys(newHeap, zipf));
+
+        names.add("increaseKey/cascadingCut");
+        operations.add(NODES);
+        factories.add(HeapBenchmark::cascadingCuts);
+
+        names.add("removeMax/query");
+        operations.add(OPERATIONS);
+        factories.add(newHeap -> new Benchmark(){
+            final int[] maxNodes = new int[QUERY_K];
+            Heap heap;
+            public void setup(){
+                heap = newHeap.get();
+                fill(heap, NODES);
+                heap.consolidate();
+            }
+            public int operation(int i){
+                // one query of K words the way keywordcounter used to do it
+                int result = 0;
+                for(int j = 0; j < QUERY_K; ++j)
+                    result += maxNodes[j] = heap.removeMax();
+                for(int j = 0; j < QUERY_K; ++j)
+                    heap.reinsert(maxNodes[j]);
+                return result;
+            }
+        });
+
+        names.add("topK/query");
+        operations.add(OPERATIONS);
+        factories.add(newHeap -> new Benchmark(){
+            Heap heap;
+            public void setup(){
+                heap = newHeap.get();
+                fill(heap, NODES);
+                heap.consolidate();
+            }
+            public int operation(int i){ return heap.topK(QUERY_K); }
+        });
+
+        names.add("pairwiseCombine/wideRootList");
+        operations.add(WIDE_HEAPS);
+        factories.add(newHeap -> new Benchmark(){
+            // each operation consolidates a heap whose nodes are all in the root list
+            final Heap[] heaps = new Heap[WIDE_HEAPS];
+            public void setup(){
+                for(int j = 0; j < heaps.length; ++j){
+                    heaps[j] = newHeap.get();
+                    fill(heaps[j], NODES / WIDE_HEAPS);
+                }
+            }
+            public int operation(int i){ return heaps[i].consolidate(); }
+        });
+    }
+
+    /**
+     * Runs the benchmark in each fork, or once in this JVM if forks is 0,
+     * and prints the mean throughput with the spread between the forks,
+     * the mean allocation and the median latency percentiles.
+     * @return  -   sink of the forks
+     */
+    private static long report(String name, String heap, int forks) throws IOException, InterruptedException{
+        int runs = Math.max(forks, 1);
+        double[] throughput = new double[runs];
+        double bytes = 0;
+        double megabytes = 0;
+        long[][] percentiles = new long[3][runs];
+        long sink = 0;
+
+        for(int run = 0; run < runs; ++run){
+            String[] result = (forks == 0 ? measure(name, heap) : fork(name, heap)).split(" ");
+            throughput[run] = Double.parseDouble(result[0]);
+            bytes += Double.parseDouble(result[1]) / runs;
+            for(int i = 0; i < 3; ++i)
+                percentiles[i][run] = Long.parseLong(result[2 + i]);
+            sink += Long.parseLong(result[5]);
+            megabytes += Double.parseDouble(result[6]) / runs;
+        }
+
+        double mean = Arrays.stream(throughput).average().getAsDouble();
+        double spread = (Arrays.stream(throughput).max().getAsDouble() - Arrays.stream(throughput).min().getAsDouble()) / mean;
+        String[] latencies = new String[3];
+        for(int i = 0; i < 3; ++i){
+            Arrays.sort(percentiles[i]);
+            long median = percentiles[i][runs / 2];
+            latencies[i] = median < 0 ? "-" : Long.toString(median);
+        }
+
+        System.out.printf("%-30s %-20s %14.0f %6.1f%% %12.2f %10s %10s %10s%s%n", name, heap, mean, spread * 100, bytes,
+                latencies[0], latencies[1], latencies[2],
+                megabytes > 0 ? String.format("   (ops are input lines, %.1f MB/s)", megabytes) : "");
+        return sink;
+    }
+
+    /**
+     * Runs the benchmark in a fresh JVM with the same options and class path.
+     * @return  -   result line printed by measure() in that JVM
+     */
+    private static String fork(String name, String heap) throws IOException, InterruptedException{
+        List<String> command = new ArrayList<>();
+        command.add(new File(new File(System.getProperty("java.home"), "bin"), "java").getPath());
+        command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add("HeapBenchmark");
+        command.add("--fork");
+        command.add(name);
+        command.add(heap);
+
+        Process process = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+        String result = null;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))){
+            for(String line = reader.readLine(); line != null; line = reader.readLine())
+                result = line;
+        }
+        if(process.waitFor() != 0 || result == null)
+            throw new IOException("the fork of " + name + " on " + heap + " failed");
+        return result;
+    }
+
+    /**
+     * Runs one benchmark on one heap in this JVM.
+     * @return  -   ops/s, bytes/op, the p50, p99 and p99.9 latencies, the sink and MB/s, separated by spaces
+     */
+    private static String measure(String name, String heap) throws IOException{
+        if(name.equals("keywordcounter/endToEnd"))
+            return runEndToEnd();
+
+        List<String> names = new ArrayList<>();
+        List<BenchmarkFactory> factories = new ArrayList<>();
+        List<Integer> operations = new ArrayList<>();
+        define(names, factories, operations);
+
+        int index = names.indexOf(name);
+        if(index < 0)
+            throw new IllegalArgumentException("no benchmark " + name);
+        Supplier<Heap> newHeap = heap.equals("IntMaxFibonacciHeap") ? PrimitiveHeap::new : ObjectHeap::new;
+        return run(factories.get(index).create(newHeap), operations.get(index));
+    }
+
+    /**
+     * Runs the warmup and measured iterations of the benchmark.
+     * @return  -   the average throughput and allocation of the measured
+     *              iterations and the latency percentiles of all of them, as measure() returns them
+     */
+    private static String run(Benchmark benchmark, int operations){
+        long[] latencies = new long[operations * ITERATIONS];
+        long totalNanos = 0;
+        long totalBytes = 0;
+        long sink = 0;
+
+        for(int iteration = -WARMUP_ITERATIONS; iteration < ITERATIONS; ++iteration){
+            benchmark.setup();
+
+            // throughput pass without timers
+            long bytes = THREADS.getCurrentThreadAllocatedBytes();
+            long start = System.nanoTime();
+            for(int i = 0; i < operations; ++i)
+                sink += benchmark.operation(i);
+            long nanos = System.nanoTime() - start;
+            bytes = THREADS.getCurrentThreadAllocatedBytes() - bytes;
+
+            if(iteration < 0)
+                continue;
+            totalNanos += nanos;
+            totalBytes += bytes;
+
+            // latency pass timing each operation
+            benchmark.setup();
+            int offset = iteration * operations;
+            for(int i = 0; i < operations; ++i){
+                long begin = System.nanoTime();
+                sink += benchmark.operation(i);
+                latencies[offset + i] = System.nanoTime() - begin;
+            }
+        }
+
+        Arrays.sort(latencies);
+        long count = (long) operations * ITERATIONS;
+        return String.format(Locale.ROOT, "%f %f %d %d %d %d 0", count / (totalNanos / 1e9), (double) totalBytes / count,
+                percentile(latencies, 0.5), percentile(latencies, 0.99), percentile(latencies, 0.999), sink);
+    }
+
+    private static long percentile(long[] sorted, double fraction){
+        return sorted[(int) Math.min(sorted.length - 1, (long) (sorted.length * fraction))];
+    }
+
+    /**
+     * Increases random nodes of a heap of NODES nodes, following the workload.
+     */
+    private static Benchmark increaseKeys(Supplier<Heap> newHeap, int[] workload){
+        return new Benchmark(){
+            Heap heap;
+            int[] nodes;
+            public void setup(){
+                heap = newHeap.get();
+                nodes = fill(heap, NODES);
+                heap.consolidate();
+            }
+            public int operation(int i){ return heap.increaseKey(nodes[workload[i]], 1 + (i & 7)); }
+        };
+    }
+
+    /**
+     * Adversarial increaseKey: the heap is consolidated into deep trees and
+     * the deepest nodes are increased first, so most increases cut a node
+     * whose parent has already lost a child, starting long cascading cuts.
+     */
+    private static Benchmark cascadingCuts(Supplier<Heap> newHeap){
+        return new Benchmark(){
+            Heap heap;
+            int[] deepestFirst;
+            public void setup(){
+                heap = newHeap.get();
+                int[] nodes = fill(heap, NODES);
+                heap.consolidate();
+
+                Integer[] order = new Integer[nodes.length];
+                int[] depth = new int[nodes.length];
+                for(int i = 0; i < nodes.length; ++i){
+                    order[i] = i;
+                    depth[i] = heap.depth(nodes[i]);
+                }
+                Arrays.sort(order, (a, b) -> Integer.compare(depth[b], depth[a]));
+
+                deepestFirst = new int[nodes.length];
+                for(int i = 0; i < nodes.length; ++i)
+                    deepestFirst[i] = nodes[order[i]];
+            }
+            public int operation(int i){ return heap.increaseKey(deepestFirst[i], Integer.MAX_VALUE / 4); }
+        };
+    }
+
+    /**
+     * Inserts count nodes with random frequencies into the root list.
+     */
+    private static int[] fill(Heap heap, int count){
+        Random random = new Random(count);
+        int[] nodes = new int[count];
+        for(int i = 0; i < count; ++i)
+            nodes[i] = heap.insert(1 + random.nextInt(1 << 20));
+        return nodes;
+    }
+
+    static int[] uniformWorkload(){
+        Random random = new Random(1);
+        int[] workload = new int[OPERATIONS];
+        for(int i = 0; i < OPERATIONS; ++i)
+            workload[i] = random.nextInt(NODES);
+        return workload;
+    }
+
+    /**
+     * Keyword indexes following Zipf's law: index i has probability proportional to 1 / (i + 1)^s.
+     */
+    static int[] zipfWorkload(){
+        double[] cumulative = new double[NODES];
+        double sum = 0;
+        for(int i = 0; i < NODES; ++i){
+            sum += 1 / Math.pow(i + 1, ZIPF_EXPONENT);
+            cumulative[i] = sum;
+        }
+
+        Random random = new Random(2);
+        int[] workload = new int[OPERATIONS];
+        for(int i = 0; i < OPERATIONS; ++i){
+            int index = Arrays.binarySearch(cumulative, random.nextDouble() * sum);
+            workload[i] = Math.min(index < 0 ? -index - 1 : index, NODES - 1);
+        }
+        return workload;
+    }
+
+    /**
+     * Runs keywordcounter on a generated file. Its ops are the input lines.
+     * @return  -   lines per second, bytes allocated per line, no latencies,
+     *              the sink and megabytes per second, as measure() returns them
+     */
+    private static String runEndToEnd() throws IOException{
+        int lines = 5000000;
+        File inputFile = File.createTempFile("keywords", ".txt");
+        inputFile.deleteOnExit();
+        ParserComparison.generate(inputFile, lines, 100000);
+
+        PrintStream out = System.out;
+        double[] seconds = new double[ITERATIONS];
+        long bytes = 0;
+        long sink = 0;
+
+        for(int iteration = -WARMUP_ITERATIONS; iteration < ITERATIONS; ++iteration){
+            long allocated = THREADS.getCurrentThreadAllocatedBytes();
+            long start = System.nanoTime();
+            try (BufferedWriter fileWriter = new BufferedWriter(Writer.nullWriter())){
+                // writeOutput() also prints the results
+                System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+                keywordcounter counter = new keywordcounter(fileWriter);
+                new KeywordParser(counter).parse(inputFile);
+                sink += counter.getKeywordCount();
+            }finally{
+                System.setOut(out);
+            }
+            if(iteration >= 0){
+                seconds[iteration] = (System.nanoTime() - start) / 1e9;
+                bytes += THREADS.getCurrentThreadAllocatedBytes() - allocated;
+            }
+        }
+
+        Arrays.sort(seconds);
+        double median = seconds[ITERATIONS / 2];
+        return String.format(Locale.ROOT, "%f %f -1 -1 -1 %d %f", lines / median, (double) bytes / ((long) lines * ITERATIONS),
+                sink, inputFile.length() / 1e6 / median);
+    }
+}
@@ -0,0 +1,123 @@
+import java.util.Random;
+
+/**
+ *  Compares memory and throughput of MaxFibonacciHeap (one Node object
+ *  per keyword) with IntMaxFibonacciHeap (parallel primitive arrays).
+ *  Both heaps see the same sequence of inserts, increaseKeys and top K
+ *  queries. Keywords are kept outside the heaps in both cases so that
+ *  only the heap itself is measured.
+ *
+ *  Usage: java HeapComparison [keywords] [operations]
+ */
+public class HeapComparison {
+
+    private static final int QUERY_INTERVAL = 10000;   // operations between two queries
+    private static final int K = 10;
+
+    private static Object retained;     // keeps the measured heap reachable
+
+    public static void main(String[] args){
+        int keywords = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        int operations = args.length > 1 ? Integer.parseInt(args[1]) : 10000000;
+
+        int[] workload = createWorkload(keywords, operations);
+
+        System.out.println("keywords: " + keywords + ", operations: " + operations);
+
+        // warm up both versions before measuring
+        runObjectHeap(keywords, workload);
+        runIntHeap(keywords, workload);
+
+        long before = usedMemory();
+        long start = System.nanoTime();
+        retained = runObjectHeap(keywords, workload);
+        long objectTime = System.nanoTime() - start;
+        long objectMemory = usedMemory() - before;
+        report("MaxFibonacciHeap", objectTime, objectMemory, keywords, operations);
+        retained = null;
+
+        before = usedMemory();
+        start = System.nanoTime();
+        retained = runIntHeap(keywords, workload);
+        long intTime = System.nanoTime() - start;
+        long intMemory = usedMemory() - before;
+        report("IntMaxFibonacciHeap", intTime, intMemory, keywords, operations);
+        retained = null;
+    }
+
+    /**
+     * Creates the keyword index of each operation. The keywords follow a
+     * skewed distribution, so a few keywords get most of the increments.
+     */
+    private static int[] createWorkload(int keywords, int operations){
+        Random random = new Random(7);
+        int[] workload = new int[operations];
+        for(int i = 0; i < operations; ++i){
+            double skew = random.nextDouble();
+            workload[i] = (int) (keywords * skew * skew * skew);
+        }
+        return workload;
+    }
+
+    private static Node[] runObjectHeap(int keywords, int[] workload){
+        MaxFibonacciHeap heap = new MaxFibonacciHeap();
+        Node[] nodes = new Node[keywords];
+
+        for(int i = 0; i < workload.length; ++i){
+            int keyword = workload[i];
+            if(nodes[keyword] == null)
+                nodes[keyword] = heap.insert(null, 1);
+            else
+                heap.increaseKey(nodes[keyword], 1);
+
+            if(i % QUERY_INTERVAL == 0){
+                for(int j = 0; j < K; ++j){
+                    Node max = heap.removeMax();
+                    if(max == null)
+                        break;
+                    heap.insert(max);
+                }
+            }
+        }
+        return nodes;
+    }
+
+    private static IntMaxFibonacciHeap runIntHeap(int keywords, int[] workload){
+        IntMaxFibonacciHeap heap = new IntMaxFibonacciHeap();
+        int[] handles = new int[keywords];
+
+        for(int i = 0; i < workload.length; ++i){
+            int keyword = workload[i];
+            if(handles[keyword] == 0)
+                handles[keyword] = heap.insert(1);
+            else
+                heap.increaseKey(handles[keyword], 1);
+
+            if(i % QUERY_INTERVAL == 0){
+                int[] topK = new int[K];
+                int count = 0;
+                for(int j = 0; j < K; ++j){
+                    int max = heap.removeMax();
+                    if(max == IntMaxFibonacciHeap.NIL)
+                        break;
+                    topK[count++] = max;
+                }
+                for(int j = 0; j < count; ++j)
+                    heap.insertNode(topK[j]);
+            }
+        }
+        return heap;
+    }
+
+    private static long usedMemory(){
+        Runtime runtime = Runtime.getRuntime();
+        for(int i = 0; i < 3; ++i)
+            System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static void report(String name, long nanos, long memory, int keywords, int operations){
+        System.out.printf("%-20s %8.1f ms %12.0f ops/s %10.1f MB %6.1f bytes/keyword%n",
+                name, nanos / 1e6, operations / (nanos / 1e9), memory / 1e6, (double) memory / keywords);
+    }
+}
@@ -0,0 +1,259 @@
+import java.beans.ConstructorProperties;
+import java.lang.management.ManagementFactory;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Counters and histograms of the heap operations of one keywordcounter:
+ * latencies of insert, increaseKey, removeMax, remove, decreaseKey and
+ * queries, the length of cascading cuts, the size of the root list at each
+ * pairwise combine and the largest degree after it, and the dictionary
+ * lookups and misses. A remove or decreaseKey is recorded only under its
+ * own operation, not as the removeMax it uses.
+ *
+ * The heap only records when it was given a HeapMetrics, so without one
+ * an operation pays a single null check. The values can be read through
+ * JMX after register(), and consolidations, cascading cuts and queries
+ * are also committed as JFR events when a recording enables them.
+ *
+ * Only the counter's thread records; JMX reads from other threads see
+ * values which may be a few records behind.
+ */
+public class HeapMetrics implements HeapMetricsMXBean {
+
+    private final LatencyHistogram insert = new LatencyHistogram();
+    private final LatencyHistogram increaseKey = new LatencyHistogram();
+    private final LatencyHistogram removeMax = new LatencyHistogram();
+    private final LatencyHistogram remove = new LatencyHistogram();
+    private final LatencyHistogram decreaseKey = new LatencyHistogram();
+    private final LatencyHistogram query = new LatencyHistogram();
+    private final LatencyHistogram cascadingCutLength = new LatencyHistogram();
+    private final LatencyHistogram rootListSize = new LatencyHistogram();
+    private final LatencyHistogram maxDegree = new LatencyHistogram();
+    private long dictionaryLookups;
+    private long dictionaryMisses;
+
+    /**
+     * Immutable summary of one histogram, shown by JMX clients as composite data.
+     */
+    public static final class Summary {
+        private final long count;
+        private final double mean;
+        private final long p50;
+        private final long p99;
+        private final long p999;
+        private final long max;
+
+        @ConstructorProperties({"count", "mean", "p50", "p99", "p999", "max"})
+        public Summary(long count, double mean, long p50, long p99, long p999, long max){
+            this.count = count;
+            this.mean = mean;
+            this.p50 = p50;
+            this.p99 = p99;
+            this.p999 = p999;
+            this.max = max;
+        }
+
+        static Summary of(LatencyHistogram histogram){
+            return new Summary(histogram.getCount(), histogram.getMean(), histogram.getValueAtPercentile(50),
+                    histogram.getValueAtPercentile(99), histogram.getValueAtPercentile(99.9), histogram.getMax());
+        }
+
+        public long getCount(){
+            return count;
+        }
+
+        public double getMean(){
+            return mean;
+        }
+
+        public long getP50(){
+            return p50;
+        }
+
+        public long getP99(){
+            return p99;
+        }
+
+        public long getP999(){
+            return p999;
+        }
+
+        public long getMax(){
+            return max;
+        }
+
+        @Override
+        public String toString(){
+            return String.format("count %d, mean %.1f, p50 %d, p99 %d, p99.9 %d, max %d", count, mean, p50, p99, p999, max);
+        }
+    }
+
+    void recordInsert(long nanos){
+        insert.record(nanos);
+    }
+
+    /**
+     * @param nanos -   time of the increaseKey
+     * @param cuts  -   nodes moved to the root list by it
+     */
+    void recordIncreaseKey(long nanos, int cuts){
+        increaseKey.record(nanos);
+        if(cuts == 0)
+            return;
+
+        cascadingCutLength.record(cuts);
+        CascadingCutEvent event = new CascadingCutEvent();
+        if(event.shouldCommit()){
+            event.length = cuts;
+            event.commit();
+        }
+    }
+
+    void recordRemoveMax(long nanos){
+        removeMax.record(nanos);
+    }
+
+    void recordRemove(long nanos){
+        remove.record(nanos);
+    }
+
+    void recordDecreaseKey(long nanos){
+        decreaseKey.record(nanos);
+    }
+
+    /**
+     * @param nanos -   time of the pairwise combine
+     * @param roots -   number of roots before it
+     * @param degree    -   largest root degree after it
+     * @param operation -   heap operation which did it: removeMax, remove, decreaseKey or consolidate
+     */
+    void recordConsolidation(long nanos, int roots, int degree, String operation){
+        rootListSize.record(roots);
+        maxDegree.record(degree);
+
+        ConsolidationEvent event = new ConsolidationEvent();
+        if(event.shouldCommit()){
+            event.rootListSize = roots;
+            event.maxDegree = degree;
+            event.operation = operation;
+            event.time = nanos;
+            event.commit();
+        }
+    }
+
+    void recordQuery(long nanos, int K){
+        query.record(nanos);
+
+        QueryEvent event = new QueryEvent();
+        if(event.shouldCommit()){
+            event.k = K;
+            event.time = nanos;
+            event.commit();
+        }
+    }
+
+    /**
+     * @param miss  -   whether the lookup added a new keyword
+     */
+    void recordLookup(boolean miss){
+        ++dictionaryLookups;
+        if(miss)
+            ++dictionaryMisses;
+    }
+
+    /**
+     * Registers the metrics with the platform MBean server.
+     * @param name  -   name of the counter, unique in the JVM
+     */
+    public void register(String name) throws JMException{
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this,
+                new ObjectName("keywordcounter:type=HeapMetrics,name=" + ObjectName.quote(name)));
+    }
+
+    @Override
+    public Summary getInsert(){
+        return Summary.of(insert);
+    }
+
+    @Override
+    public Summary getIncreaseKey(){
+        return Summary.of(increaseKey);
+    }
+
+    @Override
+    public Summary getRemoveMax(){
+        return Summary.of(removeMax);
+    }
+
+    @Override
+    public Summary getRemove(){
+        return Summary.of(remove);
+    }
+
+    @Override
+    public Summary getDecreaseKey(){
+        return Summary.of(decreaseKey);
+    }
+
+    @Override
+    public Summary getQuery(){
+        return Summary.of(query);
+    }
+
+    @Override
+    public Summary getCascadingCutLength(){
+        return Summary.of(cascadingCutLength);
+    }
+
+    @Override
+    public Summary getRootListSize(){
+        return Summary.of(rootListSize);
+    }
+
+    @Override
+    public Summary getMaxDegree(){
+        return Summary.of(maxDegree);
+    }
+
+    @Override
+    public long getDictionaryLookups(){
+        return dictionaryLookups;
+    }
+
+    @Override
+    public long getDictionaryMisses(){
+        return dictionaryMisses;
+    }
+
+    @Override
+    public void reset(){
+        insert.reset();
+        increaseKey.reset();
+        removeMax.reset();
+        remove.reset();
+        decreaseKey.reset();
+        query.reset();
+        cascadingCutLength.reset();
+        rootListSize.reset();
+        maxDegree.reset();
+        dictionaryLookups = 0;
+        dictionaryMisses = 0;
+    }
+
+    /**
+     * @return  -   one line per histogram and counter, latencies in nanoseconds
+     */
+    public String report(){
+        return "insert ns:           " + getInsert()
+                + "\nincreaseKey ns:      " + getIncreaseKey()
+                + "\nremoveMax ns:        " + getRemoveMax()
+                + "\nremove ns:           " + getRemove()
+                + "\ndecreaseKey ns:      " + getDecreaseKey()
+                + "\nquery ns:            " + getQuery()
+                + "\ncascading cut:       " + getCascadingCutLength()
+                + "\nroot list size:      " + getRootListSize()
+                + "\nmax degree:          " + getMaxDegree()
+                + "\ndictionary:          " + dictionaryLookups + " lookups, " + dictionaryMisses + " misses";
+    }
+}
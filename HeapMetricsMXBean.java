@@ -0,0 +1,45 @@
+/**
+ * Management interface of HeapMetrics, registered with the platform MBean
+ * server under keywordcounter:type=HeapMetrics. Latencies are in nanoseconds.
+ */
+public interface HeapMetricsMXBean {
+
+    HeapMetrics.Summary getInsert();
+
+    HeapMetrics.Summary getIncreaseKey();
+
+    HeapMetrics.Summary getRemoveMax();
+
+    /**
+     * @return  -   removals of a node other than through removeMax(), such as evictions
+     */
+    HeapMetrics.Summary getRemove();
+
+    HeapMetrics.Summary getDecreaseKey();
+
+    HeapMetrics.Summary getQuery();
+
+    /**
+     * @return  -   nodes cut by each increaseKey() which cut at least one node
+     */
+    HeapMetrics.Summary getCascadingCutLength();
+
+    /**
+     * @return  -   number of roots at the start of each pairwise combine
+     */
+    HeapMetrics.Summary getRootListSize();
+
+    /**
+     * @return  -   largest root degree after each pairwise combine
+     */
+    HeapMetrics.Summary getMaxDegree();
+
+    long getDictionaryLookups();
+
+    /**
+     * @return  -   lookups which added a new keyword
+     */
+    long getDictionaryMisses();
+
+    void reset();
+}
@@ -0,0 +1,80 @@
+import java.util.Arrays;
+
+/**
+ * Flat primitive map from keyword id to the sum of its pending increments.
+ * Keyword ids are dense, so the sums are kept in an array indexed by id
+ * and the ids having a pending increment are listed in insertion order.
+ */
+public class IncrementBuffer {
+
+    /**
+     * Receives one summed increment per keyword on flush.
+     */
+    public interface Consumer {
+        void accept(int id, int frequency);
+    }
+
+    private final int capacity;     // distinct keywords buffered before the buffer is full
+    private int[] deltas = new int[1024];           // pending increment of each keyword id
+    private boolean[] isPending = new boolean[1024];// whether the keyword id is in pendingIds
+    private final int[] pendingIds;                 // keyword ids having a pending increment
+    private int pendingCount;
+
+    /**
+     * @param capacity  -   number of distinct keywords after which isFull() is true
+     */
+    public IncrementBuffer(int capacity){
+        this.capacity = capacity;
+        this.pendingIds = new int[capacity];
+    }
+
+    /**
+     * Adds the frequency to the pending increment of the keyword.
+     * Must not be called when the buffer is full.
+     * @param id    -   keyword id
+     * @param frequency -   increment
+     */
+    public void add(int id, int frequency){
+        if(id >= deltas.length){
+            int length = Math.max(deltas.length * 2, id + 1);
+            deltas = Arrays.copyOf(deltas, length);
+            isPending = Arrays.copyOf(isPending, length);
+        }
+
+        if(!isPending[id]){
+            isPending[id] = true;
+            pendingIds[pendingCount++] = id;
+        }
+        deltas[id] += frequency;
+    }
+
+    /**
+     * @return  -   pending increment of the keyword, 0 if it has none
+     */
+    public int get(int id){
+        return id < deltas.length ? deltas[id] : 0;
+    }
+
+    public boolean isFull(){
+        return pendingCount == capacity;
+    }
+
+    public boolean isEmpty(){
+        return pendingCount == 0;
+    }
+
+    /**
+     * Passes each pending increment to the consumer in the order the
+     * keywords were first buffered, and empties the buffer.
+     */
+    public void flush(Consumer consumer){
+        for(int i = 0; i < pendingCount; ++i){
+            int id = pendingIds[i];
+            int frequency = deltas[id];
+            deltas[id] = 0;
+            isPending[id] = false;
+            consumer.accept(id, frequency);
+        }
+        pendingCount = 0;
+    }
+}
@@ -0,0 +1,524 @@
+import java.util.Arrays;
+
+/**
+ * Implementation of max fibonacci heap which keeps the node fields
+ * in parallel primitive arrays instead of one Node object per keyword.
+ * A node is addressed by an int handle returned by insert(). The handle
+ * 0 is reserved for the root, so handles start from 1. Keywords are not
+ * stored here, the caller maps its keywords to the handles.
+ */
+public class IntMaxFibonacciHeap {
+
+    public static final int ROOT = 0;       // handle of the root
+    public static final int NIL = -1;       // handle used for a missing node
+
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int MAX_DEGREE = 64;   // larger than log_phi of any int size
+
+    private int[] parent;       // handle of the parent of each node
+    private int[] child;        // handle of any one of the children of each node
+    private int[] left;         // handle of the left sibling of each node
+    private int[] right;        // handle of the right sibling of each node
+    private int[] degree;       // number of children of each node
+    private boolean[] childCut; // child cut flag of each node
+    private int[] frequency;    // frequency of each node
+
+    private int size;           // number of handles given out, including the root
+    private int max;            // handle of the node with maximum frequency
+
+    private final int[] degreeToNode = new int[MAX_DEGREE];    // reused by pairwise combine
+
+    /**
+     * Interface used to order nodes having the same frequency.
+     */
+    public interface TieBreaker {
+        int compare(int node, int otherNode);
+    }
+
+    /**
+     * Constructor for primitive Max Fibonacci Heap object.
+     * Like MaxFibonacciHeap, the root has the maximum frequency
+     * and its child cut value is always FALSE.
+     */
+    public IntMaxFibonacciHeap(){
+        this(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Constructor for primitive Max Fibonacci Heap object.
+     * @param capacity  -   number of nodes to allocate space for
+     */
+    public IntMaxFibonacciHeap(int capacity){
+        capacity = Math.max(capacity + 1, 2);
+        parent = new int[capacity];
+        child = new int[capacity];
+        left = new int[capacity];
+        right = new int[capacity];
+        degree = new int[capacity];
+        childCut = new boolean[capacity];
+        frequency = new int[capacity];
+
+        size = 1;
+        max = NIL;
+        frequency[ROOT] = Integer.MAX_VALUE;
+        clear(ROOT);
+        Arrays.fill(degreeToNode, NIL);
+    }
+
+    /**
+     * Creates a new node and inserts it as a child of the root.
+     * @param frequency -   frequency of the keyword
+     * @return  -   handle of the new node
+     */
+    public int insert(int frequency){
+        ensureCapacity(size + 1);
+        int newNode = size++;
+        this.frequency[newNode] = frequency;
+        clear(newNode);
+        doInsert(ROOT, newNode);
+        return newNode;
+    }
+
+    /**
+     * Inserts a node returned by removeMax() back as a child of the root.
+     * @param node  -   handle of the node to be inserted
+     */
+    public void insertNode(int node){
+        if(node == NIL)
+            return;
+        doInsert(ROOT, node);
+    }
+
+    /**
+     * Inserts the newNode to the circular doubly linked list of the parent.
+     * Parent's degree, child cut, and the max pointer are updated the
+     * same way as in MaxFibonacciHeap.
+     * @param parent    -   handle of the node to whose child list newNode is inserted
+     * @param newNode   -   handle of the node to be inserted
+     */
+    private void doInsert(int parent, int newNode){
+        if(child[parent] != NIL){
+            // inserts new node between child and the right sibling
+            int first = child[parent];
+            int next = right[first];
+            right[first] = newNode;
+            left[newNode] = first;
+            right[newNode] = next;
+            left[next] = newNode;
+        }else{
+            // first child creates a loop with one element
+            child[parent] = newNode;
+            left[newNode] = newNode;
+            right[newNode] = newNode;
+        }
+
+        if(parent == ROOT){
+            // children of the root are never marked
+            childCut[newNode] = false;
+            if(max == NIL || frequency[newNode] > frequency[max])
+                max = newNode;
+        }else{
+            childCut[parent] = false;
+        }
+
+        ++degree[parent];
+        this.parent[newNode] = parent;
+    }
+
+    /**
+     * Removes the node from the child list of its parent. Parent's degree
+     * and child pointer are updated, child cut is left to doCascadingCut(). If the node is the
+     * only element in the heap, the max pointer is set to NIL.
+     * @param node  -   handle of the node to be removed
+     */
+    private void doRemove(int node){
+        int parent = this.parent[node];
+
+        if(child[parent] == node){
+            if(degree[parent] == 1){
+                child[parent] = NIL;
+                if(parent == ROOT)
+                    max = NIL;
+            }else{
+                child[parent] = right[node];
+            }
+        }
+
+        // removes the node from the doubly linked list in which it resides
+        left[right[node]] = left[node];
+        right[left[node]] = right[node];
+
+        --degree[parent];
+        this.parent[node] = NIL;
+    }
+
+    /**
+     * Increases the frequency of the node by the amount provided.
+     * If the node becomes larger than its parent, it is cut and
+     * moved to the root's child list followed by cascading cut.
+     * @param node  -   handle of the node whose frequency is to be incremented
+     * @param frequency -   amount by which the frequency is incremented
+     * @throws IllegalArgumentException if the handle was never given out or its node was removed
+     */
+    public void increaseKey(int node, int frequency){
+        if(node == NIL)
+            return;
+        if(node <= ROOT || node >= size || this.parent[node] == NIL)
+            throw new IllegalArgumentException("handle " + node + " is not in the heap");
+
+        int parent = this.parent[node];
+        this.frequency[node] += frequency;
+
+        if(parent != ROOT && this.frequency[parent] < this.frequency[node]){
+            doRemove(node);
+            doInsert(ROOT, node);
+            doCascadingCut(parent);
+        }
+
+        if(this.frequency[node] > this.frequency[max])
+            max = node;
+    }
+
+    /**
+     * Performs cascading cut from the given node. Moves upward towards the
+     * root as long as the nodes have their child cut TRUE, and moves each one
+     * of them to the root's child list. The first node with child cut FALSE
+     * which is not a child of the root gets its child cut set to TRUE.
+     * @param node  -   handle of the node whose child was cut
+     */
+    private void doCascadingCut(int node){
+        while(node != ROOT && parent[node] != ROOT){
+            if(!childCut[node]){
+                childCut[node] = true;
+                return;
+            }
+            int parent = this.parent[node];
+            doRemove(node);
+            doInsert(ROOT, node);
+            node = parent;
+        }
+    }
+
+    /**
+     * Removes the max node from the heap. Max node's children are added
+     * to the root's child list and the root list is pairwise combined.
+     * @return  -   handle of the node with the max frequency if exist, NIL otherwise.
+     */
+    public int removeMax(){
+        if(max == NIL)
+            return NIL;
+
+        int maxNode = max;
+
+        doRemove(maxNode);
+        meld(ROOT, maxNode);
+        doPairwiseCombine();
+        clear(maxNode);
+
+        return maxNode;
+    }
+
+    /**
+     * Joins the child list of otherNode with the child list of parent.
+     * @param parent    -   handle of the node which becomes parent after meld
+     * @param otherNode -   handle of the node whose child list is melded
+     */
+    private void meld(int parent, int otherNode){
+        int second = child[otherNode];
+        if(second == NIL)
+            return;
+
+        if(child[parent] == NIL){
+            child[parent] = second;
+        }else{
+            int first = child[parent];
+            int firstRight = right[first];
+            int secondLeft = left[second];
+
+            right[first] = second;
+            left[second] = first;
+            left[firstRight] = secondLeft;
+            right[secondLeft] = firstRight;
+        }
+
+        degree[parent] += degree[otherNode];
+        child[otherNode] = NIL;
+        degree[otherNode] = 0;
+    }
+
+    /**
+     * Consolidates the root's child list so that no two children
+     * of the root have the same degree. The degree table is reused,
+     * so no memory is allocated.
+     */
+    public void consolidate(){
+        doPairwiseCombine();
+    }
+
+    /**
+     * Performs pairwise combine for the root's child list using a
+     * degree table. The node with larger frequency becomes the parent
+     * of the node with smaller frequency.
+     */
+    private void doPairwiseCombine(){
+        int node = child[ROOT];
+        if(node == NIL)
+            return;
+
+        int degreeCount = degree[ROOT];
+        int maxDegree = 0;
+
+        while(degreeCount > 0){
+            parent[node] = ROOT;
+            childCut[node] = false;
+
+            int next = right[node];
+            int otherNode = degreeToNode[degree[node]];
+
+            while(otherNode != NIL){
+                degreeToNode[degree[node]] = NIL;
+
+                if(frequency[otherNode] > frequency[node]){
+                    doRemove(node);
+                    doInsert(otherNode, node);
+                    node = otherNode;
+                }else{
+                    doRemove(otherNode);
+                    doInsert(node, otherNode);
+                }
+                otherNode = degreeToNode[degree[node]];
+            }
+
+            degreeToNode[degree[node]] = node;
+            maxDegree = Math.max(maxDegree, degree[node]);
+            node = next;
+            --degreeCount;
+        }
+
+        // clear the table for the next call
+        Arrays.fill(degreeToNode, 0, maxDegree + 1, NIL);
+
+        // only a few trees are left, so the max pointer is found by walking them
+        node = child[ROOT];
+        max = node;
+        for(int i = degree[ROOT]; i > 0; --i){
+            if(frequency[node] > frequency[max])
+                max = node;
+            node = right[node];
+        }
+    }
+
+    /**
+     * Returns the handles of the top k nodes without modifying the heap.
+     * Same as MaxFibonacciHeap.topK(), the trees are walked using a frontier
+     * of candidates ordered by frequency and nodes with the same frequency
+     * are ordered using the tieBreaker. Of a group of nodes with the same
+     * frequency, only the remaining number of nodes ordered first are kept,
+     * so a large group of ties is never sorted.
+     *
+     * @param k -   number of nodes to return
+     * @param tieBreaker    -   order of nodes having the same frequency
+     * @return  -   at most k handles in the decreasing order of frequency
+     */
+    public int[] topK(int k, TieBreaker tieBreaker){
+        if(k <= 0 || max == NIL)
+            return new int[0];
+
+        int[] topK = new int[k];
+        int count = 0;
+
+        IntFrontier frontier = new IntFrontier();
+        int[] sameFrequency = new int[16];
+        int sameCount;
+        // nodes ordered first among the same frequency nodes, a heap with the last of them at index 0
+        int[] selected = new int[k];
+        int selectedCount;
+
+        int rootChild = child[ROOT];
+        for(int i = degree[ROOT]; i > 0; --i){
+            frontier.add(rootChild);
+            rootChild = right[rootChild];
+        }
+
+        while(count < k && !frontier.isEmpty()){
+            int frequency = this.frequency[frontier.peek()];
+            int remaining = k - count;
+
+            sameCount = 0;
+            while(!frontier.isEmpty() && this.frequency[frontier.peek()] == frequency){
+                if(sameCount == sameFrequency.length)
+                    sameFrequency = Arrays.copyOf(sameFrequency, sameCount * 2);
+                sameFrequency[sameCount++] = frontier.poll();
+            }
+
+            // children having the same frequency are visited before adding to the result
+            selectedCount = 0;
+            for(int i = 0; i < sameCount; ++i){
+                int node = sameFrequency[i];
+                if(selectedCount < remaining){
+                    selected[selectedCount] = node;
+                    siftUp(selected, selectedCount++, tieBreaker);
+                }else if(tieBreaker.compare(node, selected[0]) < 0){
+                    selected[0] = node;
+                    siftDown(selected, selectedCount, tieBreaker);
+                }
+
+                int next = child[node];
+                for(int d = degree[node]; d > 0; --d){
+                    if(this.frequency[next] == frequency){
+                        if(sameCount == sameFrequency.length)
+                            sameFrequency = Arrays.copyOf(sameFrequency, sameCount * 2);
+                        sameFrequency[sameCount++] = next;
+                    }else{
+                        frontier.add(next);
+                    }
+                    next = right[next];
+                }
+            }
+
+            // taking the last node out each time fills the group from its end
+            for(int i = count + selectedCount - 1; i >= count; --i){
+                topK[i] = selected[0];
+                selected[0] = selected[--selectedCount];
+                siftDown(selected, selectedCount, tieBreaker);
+            }
+            count += Math.min(remaining, sameCount);
+        }
+
+        return count == k ? topK : Arrays.copyOf(topK, count);
+    }
+
+    /**
+     * Moves the handle at index up the heap of selected handles, which has the last one in the tie order at index 0.
+     */
+    private static void siftUp(int[] nodes, int index, TieBreaker tieBreaker){
+        int node = nodes[index];
+        while(index > 0){
+            int up = (index - 1) >>> 1;
+            if(tieBreaker.compare(nodes[up], node) >= 0)
+                break;
+            nodes[index] = nodes[up];
+            index = up;
+        }
+        nodes[index] = node;
+    }
+
+    /**
+     * Moves the handle at index 0 down the heap of the first count selected handles.
+     */
+    private static void siftDown(int[] nodes, int count, TieBreaker tieBreaker){
+        if(count == 0)
+            return;
+        int node = nodes[0];
+        int index = 0;
+        while(true){
+            int down = 2 * index + 1;
+            if(down >= count)
+                break;
+            if(down + 1 < count && tieBreaker.compare(nodes[down + 1], nodes[down]) > 0)
+                ++down;
+            if(tieBreaker.compare(nodes[down], node) <= 0)
+                break;
+            nodes[index] = nodes[down];
+            index = down;
+        }
+        nodes[index] = node;
+    }
+
+    /**
+     * Binary max heap of handles ordered by frequency used as the topK frontier.
+     */
+    private class IntFrontier {
+        private int[] nodes = new int[16];
+        private int count;
+
+        void add(int node){
+            if(count == nodes.length)
+                nodes = Arrays.copyOf(nodes, count * 2);
+            int i = count++;
+            while(i > 0){
+                int up = (i - 1) >>> 1;
+                if(frequency[nodes[up]] >= frequency[node])
+                    break;
+                nodes[i] = nodes[up];
+                i = up;
+            }
+            nodes[i] = node;
+        }
+
+        int peek(){
+            return nodes[0];
+        }
+
+        int poll(){
+            int top = nodes[0];
+            int last = nodes[--count];
+            int i = 0;
+            while(true){
+                int down = 2 * i + 1;
+                if(down >= count)
+                    break;
+                if(down + 1 < count && frequency[nodes[down + 1]] > frequency[nodes[down]])
+                    ++down;
+                if(frequency[nodes[down]] <= frequency[last])
+                    break;
+                nodes[i] = nodes[down];
+                i = down;
+            }
+            nodes[i] = last;
+            return top;
+        }
+
+        boolean isEmpty(){
+            return count == 0;
+        }
+    }
+
+    /**
+     * Grows the arrays so that at least capacity handles can be stored.
+     */
+    private void ensureCapacity(int capacity){
+        if(capacity <= frequency.length)
+            return;
+
+        int newCapacity = Math.max(capacity, frequency.length + (frequency.length >> 1));
+        parent = Arrays.copyOf(parent, newCapacity);
+        child = Arrays.copyOf(child, newCapacity);
+        left = Arrays.copyOf(left, newCapacity);
+        right = Arrays.copyOf(right, newCapacity);
+        degree = Arrays.copyOf(degree, newCapacity);
+        childCut = Arrays.copyOf(childCut, newCapacity);
+        frequency = Arrays.copyOf(frequency, newCapacity);
+    }
+
+    /**
+     * Clears all the fields of the node except frequency.
+     */
+    private void clear(int node){
+        parent[node] = NIL;
+        child[node] = NIL;
+        left[node] = NIL;
+        right[node] = NIL;
+        degree[node] = 0;
+        childCut[node] = false;
+    }
+
+    public int getMax(){
+        return max;
+    }
+
+    public int getFrequency(int node){
+        return frequency[node];
+    }
+
+    public int getParent(int node){
+        return parent[node];
+    }
+
+    /**
+     * @return  -   number of nodes created by insert()
+     */
+    public int size(){
+        return size - 1;
+    }
+}
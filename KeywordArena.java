@@ -0,0 +1,184 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Append-only store of keyword bytes outside the Java heap. The bytes are
+ * kept in direct ByteBuffer blocks and a keyword is addressed by a long
+ * reference holding the block and the offset in the block; its length is
+ * kept by the caller. A keyword never spans two blocks. The garbage
+ * collector only sees the few block objects, not one object per keyword.
+ *
+ * A freed keyword of up to MAX_FREED_LENGTH bytes is reused by the next
+ * keyword of the same length, so a store whose keywords are removed as
+ * fast as they are added stops growing.
+ */
+public class KeywordArena {
+
+    private static final int FIRST_BLOCK_SIZE = 1 << 16;
+    private static final int MAX_BLOCK_SIZE = 1 << 20;     // blocks double in size up to this
+    private static final int MAX_FREED_LENGTH = 64;        // longer freed keywords are not reused
+
+    private ByteBuffer[] blocks = new ByteBuffer[16];
+    private int blockCount;         // blocks in use
+    private int allocatedCount;     // blocks allocated, those after blockCount are reused after clear()
+    private int position;           // bytes used in the last block
+    private long memory;            // bytes allocated by all blocks
+    private byte[] copy = new byte[64];     // reused by copy()
+    private final long[][] freed = new long[MAX_FREED_LENGTH + 1][];    // freed references by length
+    private final int[] freedCount = new int[MAX_FREED_LENGTH + 1];
+
+    /**
+     * Appends the keyword bytes.
+     * @param bytes -   buffer containing the keyword
+     * @param offset    -   offset of the keyword in the buffer
+     * @param length    -   length of the keyword
+     * @return  -   reference of the keyword
+     */
+    public long add(byte[] bytes, int offset, int length){
+        if(length <= MAX_FREED_LENGTH && freedCount[length] > 0){
+            long reference = freed[length][--freedCount[length]];
+            blocks[(int) (reference >>> 32)].put((int) reference, bytes, offset, length);
+            return reference;
+        }
+
+        if(blockCount == 0 || position + length > blocks[blockCount - 1].capacity())
+            addBlock(length);
+
+        ByteBuffer block = blocks[blockCount - 1];
+        block.put(position, bytes, offset, length);
+
+        long reference = (long) (blockCount - 1) << 32 | position;
+        position += length;
+        return reference;
+    }
+
+    /**
+     * Gives the bytes of the keyword back for a later keyword of the same length.
+     * @param reference -   reference of the keyword, not used by the caller afterwards
+     * @param length    -   length of the keyword
+     */
+    public void free(long reference, int length){
+        if(length > MAX_FREED_LENGTH)
+            return;
+        if(freed[length] == null)
+            freed[length] = new long[16];
+        else if(freedCount[length] == freed[length].length)
+            freed[length] = Arrays.copyOf(freed[length], freedCount[length] * 2);
+        freed[length][freedCount[length]++] = reference;
+    }
+
+    /**
+     * Tells if the keyword at the reference has the given bytes.
+     * @param reference -   reference of the keyword
+     * @param bytes -   buffer containing the other keyword, of the same length
+     * @param offset    -   offset of the other keyword in the buffer
+     * @param length    -   length of both keywords
+     */
+    public boolean equals(long reference, byte[] bytes, int offset, int length){
+        ByteBuffer block = blocks[(int) (reference >>> 32)];
+        int start = (int) reference;
+        for(int i = 0; i < length; ++i){
+            if(block.get(start + i) != bytes[offset + i])
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Compares two keywords as unsigned bytes.
+     * @return  -   negative, zero or positive as the first keyword is smaller, equal or larger
+     */
+    public int compare(long reference, int length, long otherReference, int otherLength){
+        return compare(reference, length, this, otherReference, otherLength);
+    }
+
+    /**
+     * Compares a keyword with one kept in another arena as unsigned bytes.
+     * @param other -   arena holding the second keyword
+     * @return  -   negative, zero or positive as the first keyword is smaller, equal or larger
+     */
+    public int compare(long reference, int length, KeywordArena other, long otherReference, int otherLength){
+        ByteBuffer block = blocks[(int) (reference >>> 32)];
+        ByteBuffer otherBlock = other.blocks[(int) (otherReference >>> 32)];
+        int start = (int) reference;
+        int otherStart = (int) otherReference;
+
+        for(int i = 0, end = Math.min(length, otherLength); i < end; ++i){
+            int difference = Byte.toUnsignedInt(block.get(start + i)) - Byte.toUnsignedInt(otherBlock.get(otherStart + i));
+            if(difference != 0)
+                return difference;
+        }
+        return length - otherLength;
+    }
+
+    /**
+     * Decodes the keyword into a new String. The reused copy() buffer is
+     * not used, so a shared arena can be read by several threads.
+     */
+    public String getString(long reference, int length){
+        byte[] bytes = new byte[length];
+        blocks[(int) (reference >>> 32)].get((int) reference, bytes, 0, length);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns a read-only arena sharing the blocks of this one. It reads the
+     * keywords added so far while this arena keeps adding keywords, which
+     * only go to bytes it never reads, as long as no keyword is freed.
+     */
+    public KeywordArena share(){
+        KeywordArena shared = new KeywordArena();
+        shared.blocks = blocks;
+        shared.blockCount = blockCount;
+        return shared;
+    }
+
+    /**
+     * Copies the keyword into a buffer which is reused by the next call.
+     * @return  -   buffer whose first length bytes are the keyword
+     */
+    public byte[] copy(long reference, int length){
+        if(length > copy.length)
+            copy = new byte[Math.max(length, copy.length * 2)];
+        blocks[(int) (reference >>> 32)].get((int) reference, copy, 0, length);
+        return copy;
+    }
+
+    /**
+     * Forgets every keyword but keeps the blocks, which are filled again by
+     * the next keywords, so an arena used for one batch after another does
+     * not allocate more memory outside the heap.
+     */
+    public void clear(){
+        blockCount = 0;
+        position = 0;
+        Arrays.fill(freedCount, 0);
+    }
+
+    /**
+     * @return  -   bytes allocated outside the heap
+     */
+    public long memory(){
+        return memory;
+    }
+
+    private void addBlock(int length){
+        position = 0;
+        if(blockCount < allocatedCount && blocks[blockCount].capacity() >= length){
+            ++blockCount;
+            return;
+        }
+
+        if(blockCount == blocks.length)
+            blocks = Arrays.copyOf(blocks, blockCount * 2);
+
+        // a kept block too small for the keyword is replaced
+        if(blockCount < allocatedCount)
+            memory -= blocks[blockCount].capacity();
+        int size = Math.min(FIRST_BLOCK_SIZE << Math.min(blockCount, 4), MAX_BLOCK_SIZE);
+        blocks[blockCount++] = ByteBuffer.allocateDirect(Math.max(size, length));
+        memory += blocks[blockCount - 1].capacity();
+        allocatedCount = Math.max(allocatedCount, blockCount);
+    }
+}
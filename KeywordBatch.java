@@ -0,0 +1,48 @@
+import java.util.Arrays;
+
+/**
+ * Keyword lines copied out of a parser's buffer, so that they can be
+ * applied to a keywordcounter later or on another thread.
+ */
+class KeywordBatch {
+
+    static final int BATCH_SIZE = 4096;         // keyword lines in a batch
+
+    byte[] bytes = new byte[BATCH_SIZE * 16];
+    int bytesLength;
+    final int[] offsets = new int[BATCH_SIZE];
+    final int[] lengths = new int[BATCH_SIZE];
+    final int[] frequencies = new int[BATCH_SIZE];
+    int count;
+
+    /**
+     * @return  -   false if the batch is full
+     */
+    boolean add(byte[] keyword, int offset, int length, int frequency){
+        if(count == BATCH_SIZE)
+            return false;
+        if(bytesLength + length > bytes.length)
+            bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, bytesLength + length));
+
+        System.arraycopy(keyword, offset, bytes, bytesLength, length);
+        offsets[count] = bytesLength;
+        lengths[count] = length;
+        frequencies[count] = frequency;
+        bytesLength += length;
+        ++count;
+        return true;
+    }
+
+    /**
+     * Passes the keyword lines to the counter in order and empties the batch.
+     */
+    void applyTo(keywordcounter counter){
+        try{
+            for(int i = 0; i < count; ++i)
+                counter.addKeyword(bytes, offsets[i], lengths[i], frequencies[i]);
+        }finally{
+            count = 0;
+            bytesLength = 0;
+        }
+    }
+}
@@ -0,0 +1,398 @@
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Open addressing dictionary from keyword bytes to a dense keyword id.
+ * Keywords are hashed and compared directly from the caller's buffer,
+ * and their bytes are copied into an off-heap KeywordArena only the first
+ * time they are seen, so the dictionary holds no object per keyword. Ids are given out in the order of insertion starting
+ * from 0, so callers can keep per keyword data (such as the heap node)
+ * in plain arrays indexed by the id.
+ *
+ * When the table gets full, a table of double size is allocated and the
+ * entries are moved a few slots at a time on the following calls, so a
+ * resize never stops the caller for longer than one call.
+ *
+ * A removed keyword leaves the table by a backward shift of the entries
+ * probed after it, so no tombstones are left behind, and its id and its
+ * bytes in the arena are reused by the next keywords added.
+ */
+public class KeywordDictionary {
+
+    public static final int NOT_FOUND = -1;
+
+    private static final int INITIAL_CAPACITY = 1 << 10;   // number of slots, power of 2
+    private static final int MIGRATION_STEP = 16;           // old slots moved on each call
+
+    private int[] table;            // id + 1 of the keyword in each slot, 0 if empty
+    private int[] oldTable;         // table being resized, null if not resizing
+    private int migrated;           // slots of oldTable moved to table so far
+
+    private final KeywordArena keys;    // bytes of all keywords
+    private long[] keyReference;    // reference of each keyword in keys
+    private int[] keyLength;        // length of each keyword
+    private int[] keyHash;          // hash of each keyword
+    private int size;               // number of ids given out, including the removed ones
+    private int[] freeIds = new int[16];    // ids of removed keywords, reused first
+    private int freeCount;
+    private long keywordBytes;      // bytes of the keywords not removed
+
+    public KeywordDictionary(){
+        this(0);
+    }
+
+    /**
+     * Creates a dictionary which holds the given number of keywords without resizing.
+     * @param expectedSize  -   number of keywords expected
+     */
+    public KeywordDictionary(int expectedSize){
+        int capacity = Math.max(INITIAL_CAPACITY, expectedSize);
+        keys = new KeywordArena();
+        table = new int[Math.max(INITIAL_CAPACITY, Integer.highestOneBit(expectedSize * 4 / 3) * 2)];
+        keyReference = new long[capacity];
+        keyLength = new int[capacity];
+        keyHash = new int[capacity];
+    }
+
+    /**
+     * Finds the id of the keyword.
+     * @param bytes -   buffer containing the keyword
+     * @param offset    -   offset of the keyword in the buffer
+     * @param length    -   length of the keyword
+     * @return  -   id of the keyword if exist, NOT_FOUND otherwise
+     */
+    public int find(byte[] bytes, int offset, int length){
+        int hash = hash(bytes, offset, length);
+        int id = probe(table, bytes, offset, length, hash);
+        if(id == NOT_FOUND && oldTable != null)
+            id = probe(oldTable, bytes, offset, length, hash);
+        return id;
+    }
+
+    /**
+     * Finds the id of the keyword, adding the keyword if it does not exist.
+     * A new keyword gets the id of a removed keyword if there is one,
+     * otherwise the id size() - 1 after the call.
+     * @param bytes -   buffer containing the keyword
+     * @param offset    -   offset of the keyword in the buffer
+     * @param length    -   length of the keyword
+     * @return  -   id of the keyword
+     */
+    public int getOrAdd(byte[] bytes, int offset, int length){
+        if(oldTable != null)
+            migrate();
+
+        int hash = hash(bytes, offset, length);
+        int mask = table.length - 1;
+        int slot = hash & mask;
+
+        // probe the current table, remembering the empty slot where the keyword goes
+        while(table[slot] != 0){
+            int id = table[slot] - 1;
+            if(keyHash[id] == hash && equals(id, bytes, offset, length))
+                return id;
+            slot = (slot + 1) & mask;
+        }
+
+        // keywords which are not moved yet are still in the old table
+        if(oldTable != null){
+            int id = probe(oldTable, bytes, offset, length, hash);
+            if(id != NOT_FOUND)
+                return id;
+        }
+
+        int id = addKey(bytes, offset, length, hash);
+        table[slot] = id + 1;
+
+        // keep the load factor under 3/4
+        if(keywordCount() * 4 > table.length * 3 && oldTable == null)
+            startResize();
+
+        return id;
+    }
+
+    /**
+     * Finds the id of a keyword of another dictionary, adding the keyword if it does not exist.
+     * @param other -   dictionary containing the keyword
+     * @param otherId   -   id of the keyword in the other dictionary
+     * @return  -   id of the keyword in this dictionary
+     */
+    public int getOrAdd(KeywordDictionary other, int otherId){
+        int length = other.keyLength[otherId];
+        return getOrAdd(other.keys.copy(other.keyReference[otherId], length), 0, length);
+    }
+
+    /**
+     * Returns the keyword as a String. A new String is created on each call.
+     * @param id    -   id of the keyword
+     */
+    public String getKeyword(int id){
+        return keys.getString(keyReference[id], keyLength[id]);
+    }
+
+    /**
+     * Copies the keyword bytes into a buffer which is reused by the next call.
+     * @param id    -   id of the keyword
+     * @return  -   buffer whose first getLength(id) bytes are the keyword
+     */
+    public byte[] getBytes(int id){
+        return keys.copy(keyReference[id], keyLength[id]);
+    }
+
+    /**
+     * @return  -   length of the keyword in bytes
+     */
+    public int getLength(int id){
+        return keyLength[id];
+    }
+
+    /**
+     * Passes the keyword bytes to the listener in a buffer which is reused by the next call.
+     * @param id    -   id of the keyword
+     * @param frequency -   frequency passed with the keyword
+     * @param listener  -   receives the keyword
+     */
+    public void addTo(KeywordListener listener, int id, int frequency) throws IOException{
+        listener.addKeyword(keys.copy(keyReference[id], keyLength[id]), 0, keyLength[id], frequency);
+    }
+
+    /**
+     * Compares two keywords byte by byte. The order of UTF-8 bytes is the
+     * order of the code points, which is the order used for every tie.
+     * @param id    -   id of the first keyword
+     * @param otherId   -   id of the second keyword
+     * @return  -   negative, zero or positive as the first keyword is smaller, equal or larger
+     */
+    public int compare(int id, int otherId){
+        return keys.compare(keyReference[id], keyLength[id], keyReference[otherId], keyLength[otherId]);
+    }
+
+    /**
+     * Compares a keyword with a keyword of another dictionary byte by byte.
+     * @param id    -   id of the keyword in this dictionary
+     * @param other -   dictionary holding the second keyword
+     * @param otherId   -   id of the second keyword in the other dictionary
+     * @return  -   negative, zero or positive as the first keyword is smaller, equal or larger
+     */
+    public int compare(int id, KeywordDictionary other, int otherId){
+        return keys.compare(keyReference[id], keyLength[id], other.keys, other.keyReference[otherId], other.keyLength[otherId]);
+    }
+
+    /**
+     * Removes the keyword. Its id is given to a later keyword, so the caller
+     * drops every data it keeps for the id first. During a resize the
+     * keyword is deleted from both tables and the migration goes on as
+     * usual.
+     * @param id    -   id of the keyword
+     */
+    public void remove(int id){
+        if(oldTable != null)
+            migrate();
+
+        delete(table, id);
+        // the old table may still hold the keyword, moved or not
+        if(oldTable != null)
+            delete(oldTable, id);
+
+        keys.free(keyReference[id], keyLength[id]);
+        keywordBytes -= keyLength[id];
+        if(freeCount == freeIds.length)
+            freeIds = Arrays.copyOf(freeIds, freeCount * 2);
+        freeIds[freeCount++] = id;
+    }
+
+    /**
+     * Returns a read-only dictionary sharing the arrays and the arena blocks
+     * of this one instead of copying them, for reading the keywords added so
+     * far from other threads. This dictionary may keep adding keywords, which
+     * only go to ids and bytes the shared one never reads, but no keyword may
+     * be removed. Only getKeyword(), getLength() and the comparisons may be
+     * called on the shared dictionary.
+     */
+    public KeywordDictionary share(){
+        return new KeywordDictionary(this);
+    }
+
+    private KeywordDictionary(KeywordDictionary other){
+        keys = other.keys.share();
+        keyReference = other.keyReference;
+        keyLength = other.keyLength;
+        keyHash = other.keyHash;
+        size = other.size;
+    }
+
+    /**
+     * Removes every keyword. The table, the arrays and the arena blocks are
+     * kept for the next keywords, whose ids start from 0 again.
+     */
+    public void clear(){
+        Arrays.fill(table, 0);
+        oldTable = null;
+        migrated = 0;
+        keys.clear();
+        size = 0;
+        freeCount = 0;
+        keywordBytes = 0;
+    }
+
+    /**
+     * @return  -   number of ids given out, every id is below it
+     */
+    public int size(){
+        return size;
+    }
+
+    /**
+     * @return  -   number of keywords, size() without the removed keywords
+     */
+    public int keywordCount(){
+        return size - freeCount;
+    }
+
+    /**
+     * @return  -   bytes of the keywords, without the removed keywords
+     */
+    public long keywordBytes(){
+        return keywordBytes;
+    }
+
+    /**
+     * @return  -   bytes allocated outside the heap for the keywords
+     */
+    public long offHeapMemory(){
+        return keys.memory();
+    }
+
+    /**
+     * Hash of the keyword bytes with the bits mixed, so that the low bits
+     * used for the slot depend on every byte.
+     */
+    public static int hash(byte[] bytes, int offset, int length){
+        int hash = 0;
+        for(int i = offset, end = offset + length; i < end; ++i)
+            hash = 31 * hash + bytes[i];
+
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        hash ^= hash >>> 16;
+        return hash;
+    }
+
+    private int probe(int[] table, byte[] bytes, int offset, int length, int hash){
+        int mask = table.length - 1;
+        int slot = hash & mask;
+
+        while(table[slot] != 0){
+            int id = table[slot] - 1;
+            if(keyHash[id] == hash && equals(id, bytes, offset, length))
+                return id;
+            slot = (slot + 1) & mask;
+        }
+        return NOT_FOUND;
+    }
+
+    private boolean equals(int id, byte[] bytes, int offset, int length){
+        return keyLength[id] == length && keys.equals(keyReference[id], bytes, offset, length);
+    }
+
+    /**
+     * Copies the keyword bytes and gives the keyword a removed id or the next id.
+     */
+    private int addKey(byte[] bytes, int offset, int length, int hash){
+        keywordBytes += length;
+        if(freeCount > 0){
+            int id = freeIds[--freeCount];
+            keyReference[id] = keys.add(bytes, offset, length);
+            keyLength[id] = length;
+            keyHash[id] = hash;
+            return id;
+        }
+
+        if(size == keyReference.length){
+            int capacity = size * 2;
+            keyReference = Arrays.copyOf(keyReference, capacity);
+            keyLength = Arrays.copyOf(keyLength, capacity);
+            keyHash = Arrays.copyOf(keyHash, capacity);
+        }
+        int id = size++;
+        keyReference[id] = keys.add(bytes, offset, length);
+        keyLength[id] = length;
+        keyHash[id] = hash;
+        return id;
+    }
+
+    /**
+     * Allocates a table of double size. The entries are moved by migrate().
+     * The new table gets size / 2 more keywords before it becomes full again,
+     * which is enough calls to move all the slots of the old table.
+     */
+    private void startResize(){
+        oldTable = table;
+        table = new int[oldTable.length * 2];
+        migrated = 0;
+    }
+
+    /**
+     * Moves the next few slots of the old table to the current table.
+     */
+    private void migrate(){
+        int end = Math.min(migrated + MIGRATION_STEP, oldTable.length);
+
+        for(int i = migrated; i < end; ++i){
+            if(oldTable[i] != 0)
+                moveToTable(oldTable[i]);
+        }
+
+        migrated = end;
+        if(migrated == oldTable.length)
+            oldTable = null;
+    }
+
+    /**
+     * Puts an entry of the old table into the current table, unless a
+     * removal already put it there.
+     * @param entry -   id + 1 of the keyword
+     */
+    private void moveToTable(int entry){
+        int mask = table.length - 1;
+        int slot = keyHash[entry - 1] & mask;
+        while(table[slot] != 0){
+            if(table[slot] == entry)
+                return;
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = entry;
+    }
+
+    /**
+     * Deletes the keyword from the table if the table holds it. Each
+     * following entry whose home slot is not between the hole and the entry
+     * moves back, so no tombstone is left. The slots of the old table below
+     * migrated are never visited again by migrate(), so an entry which
+     * moves there from above is put into the current table at once.
+     * @param slots -   table or oldTable
+     * @param id    -   id of the keyword
+     */
+    private void delete(int[] slots, int id){
+        int mask = slots.length - 1;
+        int slot = keyHash[id] & mask;
+        while(slots[slot] != id + 1){
+            if(slots[slot] == 0)
+                return;
+            slot = (slot + 1) & mask;
+        }
+
+        for(int next = (slot + 1) & mask; slots[next] != 0; next = (next + 1) & mask){
+            int home = keyHash[slots[next] - 1] & mask;
+            if(((next - home) & mask) >= ((next - slot) & mask)){
+                slots[slot] = slots[next];
+                if(slots == oldTable && slot < migrated && next >= migrated)
+                    moveToTable(slots[slot]);
+                slot = next;
+            }
+        }
+        slots[slot] = 0;
+    }
+}
@@ -0,0 +1,47 @@
+import java.util.List;
+
+/**
+ * Priority queue of keyword frequencies used by keywordcounter. Keywords
+ * are given by their KeywordDictionary id.
+ */
+public interface KeywordEngine {
+
+    List<String> NAMES = List.of("fib", "bucket", "pairing", "lazy", "adaptive");     // names accepted by create()
+
+    /**
+     * Adds the frequency to the keyword, inserting the keyword if it is new.
+     * @param id    -   keyword id
+     * @param frequency -   amount by which the frequency is incremented
+     */
+    void add(int id, int frequency);
+
+    /**
+     * Returns the top K keywords in MaxFibonacciHeap.TOP_K_ORDER. The
+     * counts are left unchanged.
+     * @param K -   number of keywords to return
+     */
+    List<Node> topK(int K);
+
+    /**
+     * Creates an engine by name.
+     * @param name  -   "fib", "bucket", "pairing", "lazy" or "adaptive"
+     * @param dictionary    -   dictionary giving the keyword ids
+     * @return  -   the engine, null if the name is unknown
+     */
+    static KeywordEngine create(String name, KeywordDictionary dictionary){
+        switch(name){
+            case "fib":
+                return new FibonacciEngine(dictionary);
+            case "bucket":
+                return new BucketEngine(dictionary);
+            case "pairing":
+                return new PairingHeapEngine(dictionary);
+            case "lazy":
+                return new LazyEngine(dictionary);
+            case "adaptive":
+                return new AdaptiveEngine(dictionary);
+            default:
+                return null;
+        }
+    }
+}
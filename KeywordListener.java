@@ -0,0 +1,64 @@
+import java.io.IOException;
+
+/**
+ * Receives the lines of the input file from KeywordParser.
+ * The keyword bytes are only valid during the call, so an
+ * implementation copies them if it needs them later.
+ */
+public interface KeywordListener {
+
+    /**
+     * Called for a "$keyword frequency" line.
+     * @param bytes -   buffer containing the keyword
+     * @param offset    -   offset of the keyword in the buffer
+     * @param length    -   length of the keyword
+     * @param frequency -   frequency on the line
+     */
+    void addKeyword(byte[] bytes, int offset, int length, int frequency) throws IOException;
+
+    /**
+     * Called for a query line.
+     * @param K -   number of top words asked for
+     */
+    void query(int K) throws IOException;
+
+    /**
+     * Called for a "?prefix K" line. Listeners which cannot answer
+     * prefix queries keep this default, which fails the parsing.
+     * @param bytes -   buffer containing the prefix
+     * @param offset    -   offset of the prefix in the buffer
+     * @param length    -   length of the prefix
+     * @param K -   number of top words starting with the prefix asked for
+     */
+    default void prefixQuery(byte[] bytes, int offset, int length, int K) throws IOException{
+        throw new IOException("prefix queries are not supported by " + getClass().getSimpleName());
+    }
+
+    /**
+     * Called for a "#keyword" line, which asks for the frequency of the keyword.
+     * @param bytes -   buffer containing the keyword
+     * @param offset    -   offset of the keyword in the buffer
+     * @param length    -   length of the keyword
+     */
+    default void countQuery(byte[] bytes, int offset, int length) throws IOException{
+        throw new IOException("count queries are not supported by " + getClass().getSimpleName());
+    }
+
+    /**
+     * Called for a "@keyword" line, which asks for the rank of the keyword.
+     * @param bytes -   buffer containing the keyword
+     * @param offset    -   offset of the keyword in the buffer
+     * @param length    -   length of the keyword
+     */
+    default void rankQuery(byte[] bytes, int offset, int length) throws IOException{
+        throw new IOException("rank queries are not supported by " + getClass().getSimpleName());
+    }
+
+    /**
+     * Called for a ">=N" line, which asks how many keywords have a frequency of at least N.
+     * @param threshold -   smallest frequency counted
+     */
+    default void thresholdQuery(int threshold) throws IOException{
+        throw new IOException("threshold queries are not supported by " + getClass().getSimpleName());
+    }
+}
@@ -0,0 +1,180 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Parser for the keyword counter input file. The file is memory mapped
+ * (one chunk at a time for files larger than the chunk size) and its bytes
+ * are scanned directly, so no String or other object is created per line.
+ * Each "$keyword frequency" line, each query line, each "?prefix K"
+ * prefix query line, each "#keyword" count, "@keyword" rank and ">=N"
+ * threshold line is passed to the listener. A line starting with any other character stops the parsing.
+ * A number out of the int range throws NumberFormatException.
+ */
+public class KeywordParser {
+
+    public static final long DEFAULT_CHUNK_SIZE = 1L << 30;     // bytes mapped at a time
+
+    static final int STOPPED = -1;      // returned when a stop line is found
+
+    private final KeywordListener listener;
+    private final long chunkSize;
+    private byte[] keyword = new byte[64];      // keyword of the current line
+
+    public KeywordParser(KeywordListener listener){
+        this(listener, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * @param listener  -   receives the parsed lines
+     * @param chunkSize -   number of bytes mapped at a time, at most Integer.MAX_VALUE
+     */
+    public KeywordParser(KeywordListener listener, long chunkSize){
+        this.listener = listener;
+        this.chunkSize = Math.min(chunkSize, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Parses the file until its end or until a stop line.
+     * @param file  -   input file
+     */
+    public void parse(File file) throws IOException{
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)){
+            long size = channel.size();
+            long position = 0;
+
+            while(position < size){
+                int length = (int) Math.min(chunkSize, size - position);
+                boolean lastChunk = position + length == size;
+                ByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+
+                int parsed = parse(chunk, length, lastChunk);
+                if(parsed == STOPPED)
+                    return;
+                if(parsed == 0)
+                    throw new IOException("line at byte " + position + " is longer than " + chunkSize + " bytes");
+
+                // the next chunk starts at the incomplete line
+                position += parsed;
+            }
+        }
+    }
+
+    /**
+     * Parses the complete lines of the chunk. The last line of the last
+     * chunk may not end with a new line.
+     * @return  -   number of bytes parsed, or STOPPED if a stop line was found
+     */
+    private int parse(ByteBuffer chunk, int length, boolean lastChunk) throws IOException{
+        return parse(chunk, 0, length, length, lastChunk);
+    }
+
+    /**
+     * Parses the complete lines of the chunk which start before lineEnd.
+     * A line starting before lineEnd may go on up to length.
+     * @param chunk -   bytes to parse
+     * @param lineStart -   start of the first line
+     * @param lineEnd   -   lines starting at or after this offset are not parsed
+     * @param length    -   number of bytes in the chunk
+     * @param lastChunk -   whether the chunk ends at the end of the file
+     * @return  -   offset after the last parsed line, the start of a line which
+     *              is not complete in the chunk, or STOPPED if a stop line was found
+     */
+    int parse(ByteBuffer chunk, int lineStart, int lineEnd, int length, boolean lastChunk) throws IOException{
+        while(lineStart < lineEnd){
+            byte first = chunk.get(lineStart);
+            int i = lineStart + 1;
+
+            if(first == '$' || first == '?' || first == '#' || first == '@'){
+                // copy the keyword or prefix up to the space, count and rank lines have no number after it
+                boolean hasNumber = first == '$' || first == '?';
+                int keywordLength = 0;
+                byte b = 0;
+                while(i < length && (b = chunk.get(i)) != '\n' && (b != ' ' || !hasNumber)){
+                    if(keywordLength == keyword.length)
+                        keyword = Arrays.copyOf(keyword, keywordLength * 2);
+                    keyword[keywordLength++] = b;
+                    ++i;
+                }
+                if(i < length && b == ' ' && hasNumber)
+                    ++i;
+
+                int numberStart = i;
+                while(i < length && chunk.get(i) != '\n')
+                    ++i;
+                if(i == length && !lastChunk)
+                    return lineStart;
+
+                // without a number, the carriage return of the line is still in the keyword
+                if(!hasNumber && keywordLength > 0 && keyword[keywordLength - 1] == '\r')
+                    --keywordLength;
+
+                if(first == '$')
+                    listener.addKeyword(keyword, 0, keywordLength, parseInt(chunk, numberStart, i));
+                else if(first == '?')
+                    listener.prefixQuery(keyword, 0, keywordLength, parseInt(chunk, numberStart, i));
+                else if(first == '#')
+                    listener.countQuery(keyword, 0, keywordLength);
+                else
+                    listener.rankQuery(keyword, 0, keywordLength);
+
+            }else if(first == '>'){
+                while(i < length && chunk.get(i) != '\n')
+                    ++i;
+                if(i == length && !lastChunk)
+                    return lineStart;
+
+                if(i == lineStart + 1 || chunk.get(lineStart + 1) != '=')
+                    throw new NumberFormatException("threshold line must start with >=");
+                listener.thresholdQuery(parseInt(chunk, lineStart + 2, i));
+
+            }else if(first >= '0' && first <= '9'){
+                while(i < length && chunk.get(i) != '\n')
+                    ++i;
+                if(i == length && !lastChunk)
+                    return lineStart;
+
+                listener.query(parseInt(chunk, lineStart, i));
+
+            }else{
+                return STOPPED;
+            }
+
+            lineStart = i + 1;
+        }
+
+        return Math.min(lineStart, length);
+    }
+
+    /**
+     * Parses a decimal number, which may start with a minus sign and
+     * may be followed by a carriage return. Like Integer.parseInt(), a
+     * number out of the int range is rejected instead of wrapping around.
+     */
+    private static int parseInt(ByteBuffer chunk, int start, int end){
+        if(end > start && chunk.get(end - 1) == '\r')
+            --end;
+        boolean negative = start < end && chunk.get(start) == '-';
+        int i = negative ? start + 1 : start;
+        if(i >= end)
+            throw new NumberFormatException("missing number at byte " + start);
+
+        // accumulated as a negative number, which reaches one further than a positive int
+        int limit = negative ? Integer.MIN_VALUE : -Integer.MAX_VALUE;
+        int value = 0;
+
+        for(; i < end; ++i){
+            int digit = chunk.get(i) - '0';
+            if(digit < 0 || digit > 9)
+                throw new NumberFormatException("invalid number at byte " + i);
+            if(value < (limit + digit) / 10)
+                throw new NumberFormatException("number out of the int range at byte " + start);
+            value = value * 10 - digit;
+        }
+
+        return negative ? value : -value;
+    }
+}
@@ -0,0 +1,240 @@
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * TCP server on the loopback address which shares one keywordcounter
+ * between any number of connections. A client sends the lines of the input
+ * file format ("$keyword frequency", "K", "?prefix K", "#keyword",
+ * "@keyword" and ">=N") and gets one
+ * answer line per query, in the format of the output file. A line starting
+ * with any other character closes the connection; the counts stay.
+ *
+ * Requests are pipelined: each connection reads as much as is available,
+ * parses every complete line of it with KeywordParser, and only flushes its
+ * answers once the bytes read are used up. Keyword lines are copied into a
+ * KeywordBatch which is applied under the counter lock before each query,
+ * when it is full and at the end of each read, so a client streaming updates
+ * takes the lock once per batch and never waits for a round trip. A query
+ * sees every line sent before it on the same connection.
+ *
+ * Each connection has its own thread. Java 17 has no virtual threads, so
+ * the threads come from a cached pool of platform threads; the blocking
+ * code of a connection is the same as it would be on a virtual thread.
+ */
+public class KeywordServer implements Closeable {
+
+    private static final int BUFFER_SIZE = 1 << 16;     // bytes read at a time, also the longest line
+
+    private final keywordcounter counter;       // guarded by its own monitor
+    private final ServerSocketChannel serverChannel;
+    private final ExecutorService connections = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "keyword-server-connection");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * @param counter   -   counter shared by every connection
+     * @param port  -   TCP port on the loopback address, 0 for any free port
+     */
+    public KeywordServer(keywordcounter counter, int port) throws IOException{
+        this.counter = counter;
+        this.serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+    }
+
+    public int getPort(){
+        return serverChannel.socket().getLocalPort();
+    }
+
+    /**
+     * Accepts connections until close() is called.
+     */
+    public void serve() throws IOException{
+        try{
+            while(true){
+                SocketChannel channel = serverChannel.accept();
+                connections.execute(() -> handle(channel));
+            }
+        }catch (ClosedChannelException cce){
+            // close() was called
+        }
+    }
+
+    /**
+     * Stops accepting connections and closes the connections which are open.
+     */
+    @Override
+    public void close(){
+        try{
+            serverChannel.close();
+        }catch (IOException ioe){
+            // nothing more can be done with the channel
+        }
+        connections.shutdownNow();
+    }
+
+    /**
+     * Writes a snapshot of the shared counter.
+     * @param file  -   snapshot file
+     * @param withShape -   whether the heap shape is saved too
+     */
+    public void saveSnapshot(File file, boolean withShape) throws IOException{
+        synchronized (counter){
+            counter.saveSnapshot(file, withShape);
+        }
+    }
+
+    /**
+     * Body of the thread of one connection.
+     */
+    private void handle(SocketChannel channel){
+        try (SocketChannel socket = channel){
+            new Connection(socket).run();
+        }catch (IOException ioe){
+            // the client went away, its lines before the error are applied
+        }
+    }
+
+    /**
+     * Parses the lines of one client and answers its queries.
+     */
+    private class Connection implements KeywordListener {
+
+        private final SocketChannel socket;
+        private final ByteBuffer input = ByteBuffer.allocate(BUFFER_SIZE);
+        private final ByteBuffer output = ByteBuffer.allocate(BUFFER_SIZE);
+        private final KeywordParser parser = new KeywordParser(this);
+        private final KeywordBatch batch = new KeywordBatch();
+
+        Connection(SocketChannel socket){
+            this.socket = socket;
+        }
+
+        void run() throws IOException{
+            try{
+                while(true){
+                    boolean ended = socket.read(input) < 0;
+                    int length = input.position();
+
+                    int parsed = parser.parse(input, 0, length, length, ended);
+                    applyBatch();
+                    flush();
+                    if(parsed == KeywordParser.STOPPED || ended)
+                        return;
+                    if(parsed == 0 && length == BUFFER_SIZE){
+                        answer("error line longer than " + BUFFER_SIZE + " bytes\n");
+                        return;
+                    }
+
+                    // keep the incomplete line for the next read
+                    input.limit(length).position(parsed);
+                    input.compact();
+                }
+            }catch (NumberFormatException | IllegalStateException e){
+                applyBatch();
+                answer("error " + e.getMessage() + "\n");
+            }finally{
+                flush();
+            }
+        }
+
+        @Override
+        public void addKeyword(byte[] bytes, int offset, int length, int frequency){
+            if(!batch.add(bytes, offset, length, frequency)){
+                applyBatch();
+                batch.add(bytes, offset, length, frequency);
+            }
+        }
+
+        @Override
+        public void query(int K) throws IOException{
+            String line;
+            synchronized (counter){
+                batch.applyTo(counter);
+                // the words are read before another connection can change the nodes
+                line = keywordcounter.toLine(counter.topK(K));
+            }
+            answer(line);
+        }
+
+        @Override
+        public void prefixQuery(byte[] bytes, int offset, int length, int K) throws IOException{
+            String line;
+            synchronized (counter){
+                batch.applyTo(counter);
+                line = keywordcounter.toLine(counter.topK(bytes, offset, length, K));
+            }
+            answer(line);
+        }
+
+        @Override
+        public void countQuery(byte[] bytes, int offset, int length) throws IOException{
+            int count;
+            synchronized (counter){
+                batch.applyTo(counter);
+                count = counter.count(bytes, offset, length);
+            }
+            answer(count + "\n");
+        }
+
+        @Override
+        public void rankQuery(byte[] bytes, int offset, int length) throws IOException{
+            int rank;
+            synchronized (counter){
+                batch.applyTo(counter);
+                rank = counter.rank(bytes, offset, length);
+            }
+            answer(rank + "\n");
+        }
+
+        @Override
+        public void thresholdQuery(int threshold) throws IOException{
+            int count;
+            synchronized (counter){
+                batch.applyTo(counter);
+                count = counter.countAtLeast(threshold);
+            }
+            answer(count + "\n");
+        }
+
+        private void applyBatch(){
+            if(batch.count == 0)
+                return;
+            synchronized (counter){
+                batch.applyTo(counter);
+            }
+        }
+
+        /**
+         * Queues the answer, writing the queued answers first if it does not fit.
+         */
+        private void answer(String line) throws IOException{
+            byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+            if(bytes.length > output.remaining())
+                flush();
+            if(bytes.length > output.remaining()){
+                socket.write(ByteBuffer.wrap(bytes));
+                return;
+            }
+            output.put(bytes);
+        }
+
+        private void flush() throws IOException{
+            output.flip();
+            while(output.hasRemaining())
+                socket.write(output);
+            output.clear();
+        }
+    }
+}
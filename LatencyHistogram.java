@@ -0,0 +1,91 @@
+import java.util.Arrays;
+
+/**
+ * Histogram of long values with a bounded relative error, in the style of
+ * HdrHistogram. Values below 64 have their own bucket; above that each
+ * power of 2 is split into 32 buckets, so a value is known within about 3%.
+ * Recording is one array increment, and the whole long range fits in 1888
+ * buckets.
+ *
+ * Only one thread may record. Other threads may read while it records,
+ * in which case the values they see can be off by the records in flight.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;       // buckets per power of 2
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final long[] counts = new long[BUCKETS];
+    private long count;
+    private long sum;
+    private long max;
+
+    /**
+     * @param value -   value to record, negative values are recorded as 0
+     */
+    public void record(long value){
+        value = Math.max(value, 0);
+        ++counts[bucketOf(value)];
+        ++count;
+        sum += value;
+        if(value > max)
+            max = value;
+    }
+
+    public long getCount(){
+        return count;
+    }
+
+    public long getMax(){
+        return max;
+    }
+
+    public double getMean(){
+        return count == 0 ? 0 : (double) sum / count;
+    }
+
+    /**
+     * Returns the largest value in the bucket holding the given percentile,
+     * which is at most 3% above the exact value.
+     * @param percentile    -   between 0 and 100
+     * @return  -   the value, 0 if nothing was recorded
+     */
+    public long getValueAtPercentile(double percentile){
+        long total = count;
+        if(total == 0)
+            return 0;
+
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for(int bucket = 0; bucket < BUCKETS; ++bucket){
+            seen += counts[bucket];
+            if(seen >= rank)
+                return Math.min(highestValueOf(bucket), max);
+        }
+        return max;
+    }
+
+    public void reset(){
+        Arrays.fill(counts, 0);
+        count = 0;
+        sum = 0;
+        max = 0;
+    }
+
+    private static int bucketOf(long value){
+        if(value < 2 * SUB_BUCKETS)
+            return (int) value;
+        // keep the top SUB_BUCKET_BITS + 1 bits of the value
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return shift * SUB_BUCKETS + (int) (value >>> shift);
+    }
+
+    private static long highestValueOf(int bucket){
+        if(bucket < 2 * SUB_BUCKETS)
+            return bucket;
+        int shift = bucket / SUB_BUCKETS - 1;
+        long top = bucket % SUB_BUCKETS + SUB_BUCKETS;
+        return ((top + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,165 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Engine which only keeps the frequencies in a flat array indexed by
+ * keyword id. An update is one array write. A query selects the K-th
+ * largest frequency with quickselect, falling back to sorting when the
+ * partitions get unbalanced (introselect), then sorts the keywords above
+ * it and keeps the first words tied with it in a heap of at most K nodes.
+ * A query is O(n + K log K + g log K) for g keywords tied at the K-th
+ * frequency, which pays off when queries are rare.
+ */
+public class LazyEngine implements KeywordEngine {
+
+    // orders nodes of the same frequency by word
+    private static final Comparator<Node> BY_WORD = Node::compareWord;
+
+    private final KeywordDictionary dictionary;
+
+    private int[] frequency = new int[1024];
+    private boolean[] added = new boolean[1024];
+    private int[] ids = new int[1024];          // added keyword ids in the order they were added
+    private int size;
+
+    private long[] keys = new long[0];          // frequency and id of each keyword, reused by queries
+
+    public LazyEngine(KeywordDictionary dictionary){
+        this.dictionary = dictionary;
+    }
+
+    @Override
+    public void add(int id, int frequency){
+        if(id >= added.length){
+            int length = Math.max(added.length * 2, id + 1);
+            this.frequency = Arrays.copyOf(this.frequency, length);
+            added = Arrays.copyOf(added, length);
+        }
+        if(!added[id]){
+            added[id] = true;
+            if(size == ids.length)
+                ids = Arrays.copyOf(ids, size * 2);
+            ids[size++] = id;
+        }
+        this.frequency[id] += frequency;
+    }
+
+    @Override
+    public List<Node> topK(int K){
+        List<Node> topK = new ArrayList<>();
+        if(K <= 0 || size == 0)
+            return topK;
+
+        // the frequency in the high bits, so the keys order like the frequencies
+        if(keys.length < size)
+            keys = new long[ids.length];
+        for(int i = 0; i < size; ++i)
+            keys[i] = (long) frequency[ids[i]] << 32 | ids[i];
+
+        int k = Math.min(K, size);
+        select(keys, size, size - k);
+        int threshold = (int) (keys[size - k] >> 32);
+
+        // every keyword above the K-th frequency is in the answer, and select() put it after the K-th key
+        for(int i = size - k + 1; i < size; ++i){
+            if((int) (keys[i] >> 32) > threshold)
+                topK.add(new Node(dictionary, (int) keys[i], (int) (keys[i] >> 32)));
+        }
+        topK.sort(MaxFibonacciHeap.TOP_K_ORDER);
+
+        // ties with the K-th frequency are decided by word, only the remaining number of first words is kept
+        int remaining = k - topK.size();
+        PriorityQueue<Node> selected = new PriorityQueue<>(BY_WORD.reversed());
+        for(int i = 0; i < size; ++i){
+            if((int) (keys[i] >> 32) != threshold)
+                continue;
+            int id = (int) keys[i];
+            if(selected.size() < remaining){
+                selected.add(new Node(dictionary, id, threshold));
+            }else if(dictionary.compare(id, selected.peek().getKeywordId()) < 0){
+                selected.poll();
+                selected.add(new Node(dictionary, id, threshold));
+            }
+        }
+
+        Node[] group = new Node[selected.size()];
+        for(int i = group.length - 1; i >= 0; --i)
+            group[i] = selected.poll();
+        topK.addAll(Arrays.asList(group));
+        return topK;
+    }
+
+    /**
+     * @return  -   number of keywords added
+     */
+    public int size(){
+        return size;
+    }
+
+    /**
+     * @param index -   position in the order the keywords were added
+     * @return  -   keyword id
+     */
+    public int getId(int index){
+        return ids[index];
+    }
+
+    public int getFrequency(int id){
+        return frequency[id];
+    }
+
+    /**
+     * Moves the n-th smallest key to position n, with smaller keys before it
+     * and larger keys after it. After 2 log(size) unbalanced rounds the rest
+     * of the range is sorted instead.
+     */
+    static void select(long[] keys, int size, int n){
+        int low = 0;
+        int high = size - 1;
+        int rounds = 2 * (32 - Integer.numberOfLeadingZeros(size));
+
+        while(high > low){
+            if(rounds-- == 0){
+                Arrays.sort(keys, low, high + 1);
+                return;
+            }
+
+            // median of three as the pivot
+            int middle = (low + high) >>> 1;
+            if(keys[middle] < keys[low])
+                swap(keys, middle, low);
+            if(keys[high] < keys[low])
+                swap(keys, high, low);
+            if(keys[high] < keys[middle])
+                swap(keys, high, middle);
+            long pivot = keys[middle];
+
+            int i = low;
+            int j = high;
+            while(i <= j){
+                while(keys[i] < pivot)
+                    ++i;
+                while(keys[j] > pivot)
+                    --j;
+                if(i <= j)
+                    swap(keys, i++, j--);
+            }
+
+            if(n <= j)
+                high = j;
+            else if(n >= i)
+                low = i;
+            else
+                return;
+        }
+    }
+
+    private static void swap(long[] keys, int i, int j){
+        long swap = keys[i];
+        keys[i] = keys[j];
+        keys[j] = swap;
+    }
+}
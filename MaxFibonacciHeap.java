@@ -1,5 +1,11 @@
-import java.util.HashMap;
-import java.util.Map;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
 
 /**
  * Implementation of max fibonacci heap.
@@ -10,6 +16,18 @@ public class MaxFibonacciHeap {
 
     private Node root;      // root of the fibonacci heap
     private Node max;       // pointer to the node with maximum frequency
+    private Node[] degreeToNode = new Node[MAX_DEGREE];    // used by pairwise combine, empty between calls
+    private HeapMetrics metrics;    // records the operations, null if they are not measured
+
+    // larger than log_phi of the number of nodes, the table grows if it is ever exceeded
+    private static final int MAX_DEGREE = 64;
+
+    // orders nodes by decreasing frequency
+    private static final Comparator<Node> BY_FREQUENCY = (a, b) -> Integer.compare(b.getFrequency(), a.getFrequency());
+    // orders nodes by word, used to break ties between same frequency, without creating Strings for dictionary words
+    private static final Comparator<Node> BY_WORD = Node::compareWord;
+    // order of the nodes returned by topK(), used to merge the results of several heaps
+    public static final Comparator<Node> TOP_K_ORDER = BY_FREQUENCY.thenComparing(BY_WORD);
 
     /**
      * Constructor for Max Fibonacci Heap object.
@@ -32,7 +50,7 @@ public class MaxFibonacciHeap {
     public Node insert(String word, int frequency){
         // create a new node for insertion
         Node newNode = new Node(word, frequency);
-        doInsert(this.root, newNode);
+        insert(newNode);
         return newNode;
     }
 
@@ -43,7 +61,14 @@ public class MaxFibonacciHeap {
     public void insert(Node node){
         if(node == null)
             return;
+        if(metrics == null){
+            doInsert(this.root, node);
+            return;
+        }
+
+        long start = System.nanoTime();
         doInsert(this.root, node);
+        metrics.recordInsert(System.nanoTime() - start);
     }
 
     /**
@@ -109,37 +134,71 @@ public class MaxFibonacciHeap {
     }
 
     /**
-     * Removes node from doubly linked list.
-     * After removal of the node, parent's
-     * child pointer is updated to point to another node
-     * in the doubly linked list if any, the degree
-     * of the parent node is decremented, parent's
-     * child cut is set to TRUE, and node's parent pointer
-     * is set to the root.
-     *
-     * This method is used only by increaseKey. It is not
-     * intended for removal of node from thr heap directly.
+     * Removes the node from the heap.
+     * A node whose parent is not the root is first cut from its parent,
+     * with a cascading cut as in increaseKey(), which makes it a child of
+     * the root. It is then removed as if it was the max node: its children
+     * are melded into the root's child list, which is pairwise combined.
+     * The cost is the one of removeMax(), O(log n) amortized. The node can
+     * be inserted again afterwards.
      *
-     * TO DO: make it private after testing.
-     * @param node
+     * @param node  -   node to be removed from the heap
      */
+    public void remove(Node node){
+        if(node == null)
+            return;
+
+        long start = metrics == null ? 0 : System.nanoTime();
+        remove(node, "remove");
+        if(metrics != null)
+            metrics.recordRemove(System.nanoTime() - start);
+    }
 
     /**
-     * Removes the node from the heap. If the node to be removed
-     * is the max node, then removeMax() method is used otherwise
-     * doRemove() method is used.
-     * @param node  -   node to be removed from the heap
+     * Removes the node as remove() does, without recording it.
+     * @param operation -   operation recorded with the consolidation
+     */
+    private void remove(Node node, String operation){
+        if(!isRoot(node.getParent())){
+            node.setChildCut(true);
+            doCascadingCut(node);
+        }
+        this.max = node;
+        removeMax(operation);
+    }
+
+    /**
+     * Decreases the frequency of the node by the amount provided.
+     * When no child of the node gets a larger frequency than the node, and
+     * the node is not the max node, the max heap property still holds and
+     * only the frequency changes, in O(degree). Otherwise the node is
+     * removed and inserted again with its new frequency, which is O(log n)
+     * amortized.
+     *
+     * @param node  -   node whose frequency is to be decremented
+     * @param frequency -   amount by which the frequency is decremented
      */
-    private void remove(Node node){
+    public void decreaseKey(Node node, int frequency){
         if(node == null)
             return;
 
-        // if the node to be removed is max, then removeMax is used
-        if(node.equals(this.max)){
-            removeMax();
-        }else {
-            doRemove(node);
+        long start = metrics == null ? 0 : System.nanoTime();
+        node.incrementFrequencyBy(-frequency);
+
+        boolean ordered = !node.equals(this.max);
+        Node child = node.getChild();
+        for(int degree = node.getDegree(); degree > 0 && ordered; --degree){
+            ordered = child.getFrequency() <= node.getFrequency();
+            child = child.getRight();
+        }
+
+        if(!ordered){
+            remove(node, "decreaseKey");
+            doInsert(this.root, node);
         }
+
+        if(metrics != null)
+            metrics.recordDecreaseKey(System.nanoTime() - start);
     }
 
     /**
@@ -227,6 +286,8 @@ public class MaxFibonacciHeap {
         if(node == null)
             return;
 
+        long start = metrics == null ? 0 : System.nanoTime();
+        int cuts = 0;
         Node parent = node.getParent();
 
         // update node's frequency
@@ -235,7 +296,7 @@ public class MaxFibonacciHeap {
         if(!isRoot(parent) && parent.getFrequency() < node.getFrequency()) {
             // mark these node to have child cut true and then perform cascading cut
             node.setChildCut(true);
-            doCascadingCut(node);
+            cuts = doCascadingCut(node);
         }
 
          /*
@@ -246,6 +307,9 @@ public class MaxFibonacciHeap {
         if(node.getFrequency() > this.max.getFrequency()) {
             this.max = node;
         }
+
+        if(metrics != null)
+            metrics.recordIncreaseKey(System.nanoTime() - start, cuts);
     }
 
     /**
@@ -257,12 +321,14 @@ public class MaxFibonacciHeap {
      * value of root is always FALSE so, the loop terminates.
      *
      * @param node - node from where cascading cut needs to be done.
+     * @return  -   number of nodes moved to the root list
      */
-    public void doCascadingCut(Node node){
+    public int doCascadingCut(Node node){
 
         if(node == null)
-            return;
+            return 0;
 
+        int cuts = 0;
         Node parent = null;
         boolean nodeHadChildCut = node.hadChildCut();
 
@@ -272,10 +338,11 @@ public class MaxFibonacciHeap {
             parent = node.getParent();
             // save parent's child cut value before the cut
             nodeHadChildCut = parent.hadChildCut();
-            // remove this node
-            remove(node);
+            // remove this node, its children stay with it
+            doRemove(node);
             // insert node as a child of the root
             doInsert(this.root, node);
+            ++cuts;
             // move to the parent
             node = parent;
         }
@@ -283,6 +350,7 @@ public class MaxFibonacciHeap {
         // lastly, update the child cut field to true if the node is not the root node.
         if(!isRoot(node))
             node.setChildCut(true);
+        return cuts;
     }
 
     /**
@@ -335,6 +403,36 @@ public class MaxFibonacciHeap {
         parent.incrementDegreeBy(otherNode.getDegree());
     }
 
+    /**
+     * Melds the other heap into this heap by joining the two root lists
+     * and keeping the larger max. Joining the lists is O(1), but roots are
+     * recognized by their parent pointer, so each root of the other heap is
+     * pointed at this root: the meld is O(r) for r roots of the other heap,
+     * which is O(log n) only if the other heap was consolidated first, and
+     * up to O(n) right after inserts. The other heap is left empty.
+     *
+     * @param other -   heap whose nodes are moved into this heap
+     */
+    public void meld(MaxFibonacciHeap other){
+        if(other == this || other.max == null)
+            return;
+
+        // increaseKey() and cascading cut recognize roots by their parent
+        Node node = other.root.getChild();
+        for(int degree = other.root.getDegree(); degree > 0; --degree){
+            node.setParent(this.root);
+            node = node.getRight();
+        }
+
+        meld(this.root, other.root);
+
+        if(this.max == null || other.max.getFrequency() > this.max.getFrequency())
+            this.max = other.max;
+
+        other.root = new Node("root", Integer.MAX_VALUE);
+        other.max = null;
+    }
+
     /**
      * Removes the max node from the heap.
      * To remove the max node, we first remove the max node using
@@ -347,6 +445,19 @@ public class MaxFibonacciHeap {
         if(this.max == null)
             return null;
 
+        long start = metrics == null ? 0 : System.nanoTime();
+        Node maxNode = removeMax("removeMax");
+        if(metrics != null)
+            metrics.recordRemoveMax(System.nanoTime() - start);
+        return maxNode;
+    }
+
+    /**
+     * Removes the max node as removeMax() does, without recording it.
+     * The heap must not be empty.
+     * @param operation -   operation recorded with the consolidation
+     */
+    private Node removeMax(String operation){
         Node maxNode = this.max;
 
         // remove max node from the heap
@@ -354,17 +465,17 @@ public class MaxFibonacciHeap {
         // meld the root's child list with the max node's child list
         meld(this.root, maxNode);
         // pairwise combine the root's child list
-        doPairwiseCombine(this.root.getChild());
+        doPairwiseCombine(this.root.getChild(), operation);
         // clear all node fields except word and frequency to make later insertion cleaner
         maxNode.clear();
-
         return maxNode;
     }
 
     /**
      * Performs pairwise combine for root's child. To perform
-     * pairwise combined we use a hash table to keep track of a degree
-     * and a node associated with that degree. Whenever, two nodes have
+     * pairwise combined we use a table indexed by degree to keep track
+     * of a node associated with that degree. The table is reused by every
+     * call, so pairwise combine allocates no memory. Whenever, two nodes have
      * the same degree, they are combined in such a way that the node
      * with larger frequency become parent of the node with the smaller
      * frequency. This process is carried out until there is
@@ -373,13 +484,21 @@ public class MaxFibonacciHeap {
      * @param node  -   node whose parent is the root
      */
     public void doPairwiseCombine(Node node){
+        doPairwiseCombine(node, "consolidate");
+    }
+
+    /**
+     * @param operation -   heap operation which consolidates, recorded with the metrics
+     */
+    private void doPairwiseCombine(Node node, String operation){
 
         if(node == null)
             return;
 
-        // to keep track of node with the same frequency
-        Map<Integer, Node> degreeToNode = new HashMap<>();
+        long start = metrics == null ? 0 : System.nanoTime();
         int degreeCount = node.getParent().getDegree();
+        int roots = degreeCount;
+        int maxDegree = 0;  // largest degree stored in the table
         Node next = null;
         Node otherNode = null;
 
@@ -402,13 +521,13 @@ public class MaxFibonacciHeap {
             next = node.getRight();
 
             // stores the node that has same degree if any, null otherwise
-            otherNode = degreeToNode.getOrDefault(node.getDegree(), null);
+            otherNode = getNodeOfDegree(node.getDegree());
 
             // pairwise combine is done until there is no two node that has same degree
             while(otherNode != null){
 
-                // remove this entry from the map
-                degreeToNode.remove(node.getDegree());
+                // remove this entry from the table
+                degreeToNode[node.getDegree()] = null;
 
                 // if other node has larger frequency then it becomes parent
                 if(otherNode.getFrequency() > node.getFrequency()){
@@ -419,19 +538,219 @@ public class MaxFibonacciHeap {
                     doRemove(otherNode);
                     doInsert(node, otherNode);
                 }
-                // see if there is otherNode with same degree in the map
-                otherNode = degreeToNode.getOrDefault(node.getDegree(), null);
+                // see if there is otherNode with same degree in the table
+                otherNode = getNodeOfDegree(node.getDegree());
             }
 
-            degreeToNode.put(node.getDegree(), node);
+            if(node.getDegree() >= degreeToNode.length)
+                degreeToNode = Arrays.copyOf(degreeToNode, node.getDegree() * 2);
+            degreeToNode[node.getDegree()] = node;
+            maxDegree = Math.max(maxDegree, node.getDegree());
             node = next;
             --degreeCount;
         }
 
-        // clear the map
-        degreeToNode.clear();
+        // clear the table for the next call
+        Arrays.fill(degreeToNode, 0, maxDegree + 1, null);
+
+        if(metrics != null)
+            metrics.recordConsolidation(System.nanoTime() - start, roots, maxDegree, operation);
+    }
+
+    private Node getNodeOfDegree(int degree){
+        return degree < degreeToNode.length ? degreeToNode[degree] : null;
+    }
+
+    /**
+     * Consolidates the root's child list using pairwise combine.
+     * Only the shape of the heap changes; no node is removed. This is
+     * the work removeMax() would otherwise do on every query, so calling
+     * it before topK() keeps the root list short and topK() cheap.
+     */
+    public void consolidate(){
+        doPairwiseCombine(this.root.getChild());
+    }
+
+    /**
+     * Returns the top k nodes without modifying the heap.
+     * The heap ordered trees are walked using a frontier of candidate
+     * nodes ordered by frequency. Since a child never has a larger
+     * frequency than its parent, the next largest node is always in the
+     * frontier. Nodes with the same frequency are returned in the order
+     * of their words so the result doesn't depend on the shape of the heap.
+     *
+     * Every child of the root and every node having the same frequency as
+     * the k-th one is visited, so this takes O(r + (k + g) log k) for r
+     * children of the root and g ties with the k-th node. Call
+     * consolidate() first to keep r small.
+     *
+     * @param k -   number of nodes to return
+     * @return  -   at most k nodes in the decreasing order of frequency
+     */
+    public List<Node> topK(int k){
+        List<Node> topK = new ArrayList<>();
+
+        if(k <= 0 || this.max == null)
+            return topK;
+
+        // candidate nodes whose parents have already been visited
+        PriorityQueue<Node> frontier = new PriorityQueue<>(BY_FREQUENCY);
+        // nodes having the same frequency as the current largest candidate
+        List<Node> sameFrequency = new ArrayList<>();
+        // first words of the same frequency nodes, the last of them at the head
+        PriorityQueue<Node> selected = new PriorityQueue<>(BY_WORD.reversed());
+
+        // every child of the root is a candidate
+        Node rootChild = this.root.getChild();
+        for(int degree = this.root.getDegree(); degree > 0; --degree){
+            frontier.add(rootChild);
+            rootChild = rootChild.getRight();
+        }
+
+        while(topK.size() < k && !frontier.isEmpty()){
+            int frequency = frontier.peek().getFrequency();
+            int remaining = k - topK.size();
+
+            while(!frontier.isEmpty() && frontier.peek().getFrequency() == frequency)
+                sameFrequency.add(frontier.poll());
+
+            /*
+                A child may have the same frequency as its parent, so
+                the children having the same frequency are visited too
+                before any of these nodes are added to the result.
+                Only the remaining number of nodes with the first words
+                are kept, so a large group of ties is never sorted.
+             */
+            for(int i = 0; i < sameFrequency.size(); ++i){
+                Node node = sameFrequency.get(i);
+                if(selected.size() < remaining){
+                    selected.add(node);
+                }else if(BY_WORD.compare(node, selected.peek()) < 0){
+                    selected.poll();
+                    selected.add(node);
+                }
+
+                Node child = node.getChild();
+                for(int degree = node.getDegree(); degree > 0; --degree){
+                    if(child.getFrequency() == frequency)
+                        sameFrequency.add(child);
+                    else
+                        frontier.add(child);
+                    child = child.getRight();
+                }
+            }
+
+            Node[] group = new Node[selected.size()];
+            for(int i = group.length - 1; i >= 0; --i)
+                group[i] = selected.poll();
+            topK.addAll(Arrays.asList(group));
+
+            sameFrequency.clear();
+        }
+
+        return topK;
     }
 
+    /**
+     * Visits every node of the heap in preorder: each child of the root
+     * is followed by its subtree, and children are visited in the order
+     * of their circular doubly linked list starting at the child pointer.
+     * Together with the degree of each node, this order is enough for
+     * load() to rebuild the same shape.
+     *
+     * @param visitor   -   called once for each node
+     */
+    public void preorder(Consumer<Node> visitor){
+        // next sibling to visit on each level, and how many are left on that level
+        Deque<Node> siblings = new ArrayDeque<>();
+        Deque<Integer> remaining = new ArrayDeque<>();
+
+        if(this.root.hasChild()){
+            siblings.push(this.root.getChild());
+            remaining.push(this.root.getDegree());
+        }
+
+        while(!siblings.isEmpty()){
+            Node node = siblings.pop();
+            int left = remaining.pop() - 1;
+
+            visitor.accept(node);
+
+            // come back to the next sibling after the subtree of this node
+            if(left > 0){
+                siblings.push(node.getRight());
+                remaining.push(left);
+            }
+            if(node.hasChild()){
+                siblings.push(node.getChild());
+                remaining.push(node.getDegree());
+            }
+        }
+    }
+
+    /**
+     * Builds the heap in one linear pass from nodes given in preorder, as
+     * produced by preorder(). The first degrees[i] nodes of the subtree after
+     * nodes[i] become its children. The child cut value of each node is kept
+     * as set by the caller. The nodes must be heap ordered, and the heap must
+     * be empty. With all degrees 0 every node becomes a child of the root,
+     * which is what count inserts would produce, without doing the inserts.
+     *
+     * @param nodes -   nodes in preorder
+     * @param degrees   -   number of children of each node
+     * @param count -   number of nodes
+     */
+    public void load(Node[] nodes, int[] degrees, int count){
+        // parents whose children are not all linked yet, and how many children each still needs
+        Node[] parents = new Node[MAX_DEGREE];
+        int[] missing = new int[MAX_DEGREE];
+        int depth = 0;
+
+        for(int i = 0; i < count; ++i){
+            Node node = nodes[i];
+            Node parent = depth == 0 ? this.root : parents[depth - 1];
+
+            // append to the end of the parent's list, so the child pointer stays at the first child
+            if(parent.hasChild()){
+                Node first = parent.getChild();
+                Node last = first.getLeft();
+                last.setRight(node);
+                node.setLeft(last);
+                node.setRight(first);
+                first.setLeft(node);
+            }else{
+                parent.setChild(node);
+                node.setLeft(node);
+                node.setRight(node);
+            }
+            parent.incrementDegree();
+            node.setParent(parent);
+
+            if(isRoot(parent) && (this.max == null || node.getFrequency() > this.max.getFrequency()))
+                this.max = node;
+
+            if(depth > 0 && --missing[depth - 1] == 0)
+                --depth;
+
+            if(degrees[i] > 0){
+                if(depth == parents.length){
+                    parents = Arrays.copyOf(parents, depth * 2);
+                    missing = Arrays.copyOf(missing, depth * 2);
+                }
+                parents[depth] = node;
+                missing[depth] = degrees[i];
+                ++depth;
+            }
+        }
+    }
+
+    /**
+     * Records the heap operations from now on.
+     * @param metrics   -   receives the measurements, null to stop measuring
+     */
+    public void setMetrics(HeapMetrics metrics){
+        this.metrics = metrics;
+    }
 
     public Node getRoot(){
         return this.root;
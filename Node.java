@@ -11,8 +11,11 @@ public class Node {
     private Node left;          // pointer to its left sibling
     private Node right;         // pointer to its right sibling
     private boolean hadChildCut;// flag to indicate child cut
-    private String word;        // word/key for the node
+    private String word;        // word/key for the node, null if it is kept in a dictionary
+    private KeywordDictionary dictionary;   // dictionary holding the word, null if word is set
+    private int keywordId;      // id of the word in the dictionary
     private int frequency;      // frequency/value for the key
+    private int trackerIndex;   // position in the TopKTracker winners, -1 if not a winner
 
     public Node(String word, int frequency){
         // initialization
@@ -25,6 +28,19 @@ public class Node {
         this.left = null;
         this.right = null;
         this.hadChildCut = false;
+        this.trackerIndex = -1;
+    }
+
+    /**
+     * Creates a node whose word stays in the dictionary. The String is
+     * only created when getWord() is called.
+     * @param dictionary    -   dictionary holding the word
+     * @param keywordId -   id of the word in the dictionary
+     * @param frequency -   frequency of the word
+     */
+    public Node(KeywordDictionary dictionary, int keywordId, int frequency){
+        this(null, frequency);
+        setKeyword(dictionary, keywordId);
     }
 
 
@@ -60,8 +76,61 @@ public class Node {
         return this.right;
     }
 
+    /**
+     * Returns the word. For a node whose word is in a dictionary a new String is created on each call.
+     */
     public String getWord(){
-        return this.word;
+        return this.word != null ? this.word : this.dictionary.getKeyword(this.keywordId);
+    }
+
+    /**
+     * Compares the words of two nodes in the order of their UTF-8 bytes,
+     * which is the order of their code points. Words kept in dictionaries,
+     * the same one or not, are compared in place and no String is created.
+     * String.compareTo() is not used since it compares UTF-16 units, which
+     * order a supplementary character before U+E000 to U+FFFF.
+     * @param other -   node whose word is compared
+     * @return  -   negative, zero or positive as the word of this node is smaller, equal or larger
+     */
+    public int compareWord(Node other){
+        if(this.dictionary != null && other.dictionary != null)
+            return this.dictionary.compare(this.keywordId, other.dictionary, other.keywordId);
+        return compareCodePoints(getWord(), other.getWord());
+    }
+
+    /**
+     * Compares two Strings by code point, the same order as their UTF-8 bytes.
+     */
+    static int compareCodePoints(String word, String otherWord){
+        int i = 0;
+        int j = 0;
+        while(i < word.length() && j < otherWord.length()){
+            int codePoint = word.codePointAt(i);
+            int otherCodePoint = otherWord.codePointAt(j);
+            if(codePoint != otherCodePoint)
+                return Integer.compare(codePoint, otherCodePoint);
+            i += Character.charCount(codePoint);
+            j += Character.charCount(otherCodePoint);
+        }
+        return Integer.compare(word.length() - i, otherWord.length() - j);
+    }
+
+    /**
+     * @return  -   id of the word in its dictionary
+     */
+    public int getKeywordId(){
+        return this.keywordId;
+    }
+
+    /**
+     * Makes the node refer to its word in the dictionary.
+     * @param dictionary    -   dictionary holding the word
+     * @param keywordId -   id of the word in the dictionary
+     */
+    public void setKeyword(KeywordDictionary dictionary, int keywordId){
+        this.word = null;
+        this.dictionary = dictionary;
+        this.keywordId = keywordId;
     }
 
     public int getFrequency(){
@@ -102,6 +171,14 @@ public class Node {
         this.degree += degree;
     }
 
+    public int getTrackerIndex(){
+        return this.trackerIndex;
+    }
+
+    public void setTrackerIndex(int trackerIndex){
+        this.trackerIndex = trackerIndex;
+    }
+
     public void clear(){
         this.degree = 0;
         this.child = null;
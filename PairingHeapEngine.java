@@ -0,0 +1,194 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Engine keeping the keywords in a max pairing heap stored in primitive
+ * arrays indexed by keyword id. Each node has its first child, its next
+ * sibling and its previous node, which is the previous sibling or the
+ * parent of a first child. An increase cuts the node's subtree and links
+ * it with the root, both O(1). A query removes the top nodes with the two
+ * pass pairing of removeMax() and inserts them back; of the nodes tied at
+ * the K-th frequency only the first words are kept, with a heap of at most
+ * K nodes.
+ */
+public class PairingHeapEngine implements KeywordEngine {
+
+    private static final int NIL = -1;
+    // orders nodes of the same frequency by word
+    private static final Comparator<Node> BY_WORD = Node::compareWord;
+
+    private final KeywordDictionary dictionary;
+
+    private int[] frequency = new int[0];
+    private int[] child = new int[0];       // first child
+    private int[] sibling = new int[0];     // next sibling
+    private int[] previous = new int[0];    // previous sibling, or parent of a first child
+    private boolean[] inHeap = new boolean[0];
+    private int root = NIL;
+
+    private int[] pairs = new int[64];      // trees of the first pairing pass
+    private int[] removed = new int[64];    // nodes removed by a query, inserted back afterwards
+
+    public PairingHeapEngine(KeywordDictionary dictionary){
+        this.dictionary = dictionary;
+    }
+
+    @Override
+    public void add(int id, int frequency){
+        if(id >= inHeap.length){
+            int length = Math.max(inHeap.length * 2, Math.max(id + 1, 1024));
+            this.frequency = Arrays.copyOf(this.frequency, length);
+            child = Arrays.copyOf(child, length);
+            sibling = Arrays.copyOf(sibling, length);
+            previous = Arrays.copyOf(previous, length);
+            inHeap = Arrays.copyOf(inHeap, length);
+        }
+
+        if(!inHeap[id]){
+            inHeap[id] = true;
+            this.frequency[id] = frequency;
+            child[id] = sibling[id] = previous[id] = NIL;
+            insert(id);
+            return;
+        }
+
+        this.frequency[id] += frequency;
+        if(frequency > 0 && id != root){
+            // the subtree stays heap ordered, only its link to the parent may not be
+            cut(id);
+            root = link(root, id);
+        }else if(frequency < 0){
+            // the children may now be larger, so they are paired and linked with the root separately
+            if(id != root)
+                cut(id);
+            else
+                root = NIL;
+            int children = pair(child[id]);
+            child[id] = NIL;
+            if(children != NIL)
+                insert(children);
+            insert(id);
+        }
+    }
+
+    @Override
+    public List<Node> topK(int K){
+        List<Node> topK = new ArrayList<>();
+        // first words of the current frequency, the last of them at the head
+        PriorityQueue<Node> selected = new PriorityQueue<>(BY_WORD.reversed());
+        int removedCount = 0;
+
+        // remove the top K, and every node with the same frequency as the last one
+        while(root != NIL && topK.size() < K){
+            int groupFrequency = frequency[root];
+            int remaining = K - topK.size();
+            while(root != NIL && frequency[root] == groupFrequency){
+                int max = removeMax();
+                if(removedCount == removed.length)
+                    removed = Arrays.copyOf(removed, removedCount * 2);
+                removed[removedCount++] = max;
+
+                // only the remaining number of first words is kept, so the ties are never sorted
+                if(selected.size() < remaining){
+                    selected.add(new Node(dictionary, max, groupFrequency));
+                }else if(dictionary.compare(max, selected.peek().getKeywordId()) < 0){
+                    selected.poll();
+                    selected.add(new Node(dictionary, max, groupFrequency));
+                }
+            }
+
+            Node[] group = new Node[selected.size()];
+            for(int i = group.length - 1; i >= 0; --i)
+                group[i] = selected.poll();
+            topK.addAll(Arrays.asList(group));
+        }
+
+        for(int i = 0; i < removedCount; ++i)
+            insert(removed[i]);
+        return topK;
+    }
+
+    private void insert(int id){
+        root = root == NIL ? id : link(root, id);
+    }
+
+    /**
+     * Removes the root and pairs its children into the new root.
+     * @return  -   id of the removed root
+     */
+    private int removeMax(){
+        int max = root;
+        root = pair(child[max]);
+        child[max] = NIL;
+        return max;
+    }
+
+    /**
+     * Makes the tree with the smaller root the first child of the other root.
+     * Both roots must have no siblings.
+     * @return  -   root of the linked tree
+     */
+    private int link(int a, int b){
+        if(frequency[b] > frequency[a]){
+            int swap = a;
+            a = b;
+            b = swap;
+        }
+
+        sibling[b] = child[a];
+        if(child[a] != NIL)
+            previous[child[a]] = b;
+        previous[b] = a;
+        child[a] = b;
+        return a;
+    }
+
+    /**
+     * Takes the subtree of the node out of its parent's child list.
+     */
+    private void cut(int id){
+        int before = previous[id];
+        if(child[before] == id)
+            child[before] = sibling[id];
+        else
+            sibling[before] = sibling[id];
+        if(sibling[id] != NIL)
+            previous[sibling[id]] = before;
+        previous[id] = sibling[id] = NIL;
+    }
+
+    /**
+     * Two pass pairing of a sibling list: links the trees in pairs from
+     * left to right, then links the pairs from right to left.
+     * @param first -   first node of the list
+     * @return  -   root of the single tree, NIL if the list is empty
+     */
+    private int pair(int first){
+        int count = 0;
+        while(first != NIL){
+            int a = first;
+            int b = sibling[a];
+            first = b == NIL ? NIL : sibling[b];
+
+            previous[a] = sibling[a] = NIL;
+            if(b != NIL){
+                previous[b] = sibling[b] = NIL;
+                a = link(a, b);
+            }
+
+            if(count == pairs.length)
+                pairs = Arrays.copyOf(pairs, count * 2);
+            pairs[count++] = a;
+        }
+
+        if(count == 0)
+            return NIL;
+        int tree = pairs[--count];
+        while(count > 0)
+            tree = link(pairs[--count], tree);
+        return tree;
+    }
+}
@@ -0,0 +1,289 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Parser which splits the input file into byte ranges and parses them on
+ * worker threads. A range owns the lines starting inside it. Each worker sums
+ * the frequencies of its keyword lines into a delta map, starting a new map
+ * after every query line of any kind. The calling thread then applies the
+ * ranges in file order: for each segment between two queries it passes one
+ * summed frequency per keyword to the listener, followed by the query.
+ *
+ * A query sees the same counts as with KeywordParser, since it still comes
+ * after every keyword line before it, so the output of the counter is the same.
+ * Only the number of addKeyword() calls is smaller.
+ */
+public class ParallelKeywordParser {
+
+    public static final int DEFAULT_RANGE_SIZE = 16 << 20;     // bytes parsed by one task
+
+    private static final int RANGES_PER_THREAD = 2;     // ranges parsed ahead of the applier per thread
+
+    private static final int TOP_K = 0;                 // kinds of the queries kept by a range
+    private static final int PREFIX = 1;
+    private static final int COUNT = 2;
+    private static final int RANK = 3;
+    private static final int THRESHOLD = 4;
+
+    private final KeywordListener listener;
+    private final int threads;
+    private final int rangeSize;
+
+    /**
+     * @param listener  -   receives the summed keyword lines and the queries
+     * @param threads   -   number of worker threads
+     */
+    public ParallelKeywordParser(KeywordListener listener, int threads){
+        this(listener, threads, DEFAULT_RANGE_SIZE);
+    }
+
+    /**
+     * @param listener  -   receives the summed keyword lines and the queries
+     * @param threads   -   number of worker threads
+     * @param rangeSize -   bytes parsed by one task, also the longest line allowed
+     */
+    public ParallelKeywordParser(KeywordListener listener, int threads, int rangeSize){
+        this.listener = listener;
+        this.threads = threads;
+        this.rangeSize = Math.min(rangeSize, Integer.MAX_VALUE / 2);
+    }
+
+    /**
+     * Parses the file until its end or until a stop line.
+     * @param file  -   input file
+     */
+    public void parse(File file) throws IOException{
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)){
+            long size = channel.size();
+            long nextRange = 0;
+            Deque<Future<Range>> pending = new ArrayDeque<>();
+            // applied ranges, reused with their dictionary so that the arena blocks are not allocated again
+            Deque<Range> free = new ArrayDeque<>();
+
+            while(nextRange < size || !pending.isEmpty()){
+                // keep a few ranges parsed ahead, so the workers don't wait for the applier
+                while(nextRange < size && pending.size() < threads * RANGES_PER_THREAD){
+                    long start = nextRange;
+                    Range range = free.isEmpty() ? new Range() : free.poll();
+                    pending.add(executor.submit(() -> parseRange(channel, start, size, range)));
+                    nextRange += rangeSize;
+                }
+
+                Range range = get(pending.poll());
+                if(!range.apply(listener))
+                    return;
+                range.clear();
+                free.add(range);
+            }
+        }finally{
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Parses the lines starting in the range [start, start + rangeSize).
+     * @param range -   empty range receiving the lines
+     */
+    private Range parseRange(FileChannel channel, long start, long size, Range range) throws IOException{
+        // map one byte before the range to see if a line starts at the range start,
+        // and one more range after it for the line which goes past the range end
+        long mapStart = Math.max(start - 1, 0);
+        int length = (int) Math.min(size - mapStart, 2L * rangeSize + 1);
+        boolean lastChunk = mapStart + length == size;
+        ByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY, mapStart, length);
+
+        int lineEnd = (int) Math.min(start + rangeSize - mapStart, length);
+        int lineStart = 0;
+        if(start > 0){
+            while(lineStart < lineEnd && chunk.get(lineStart) != '\n')
+                ++lineStart;
+            ++lineStart;
+        }
+
+        try{
+            int parsed = new KeywordParser(range).parse(chunk, lineStart, lineEnd, length, lastChunk);
+            if(parsed == KeywordParser.STOPPED)
+                range.stopped = true;
+            else if(parsed < lineEnd)
+                range.failure = new IOException("line at byte " + (mapStart + parsed) + " is longer than " + rangeSize + " bytes");
+        }catch (IOException | NumberFormatException e){
+            // the lines before the error are still applied, as KeywordParser would do
+            range.failure = e;
+        }
+        return range;
+    }
+
+    private static Range get(Future<Range> future) throws IOException{
+        try{
+            return future.get();
+        }catch (InterruptedException ie){
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while parsing");
+        }catch (ExecutionException ee){
+            throw new IOException(ee.getCause());
+        }
+    }
+
+    /**
+     * Summed keyword lines and queries of one byte range. The keyword lines
+     * between two queries form a segment, which has one entry per keyword.
+     */
+    private static class Range implements KeywordListener {
+
+        private final KeywordDictionary dictionary = new KeywordDictionary();
+        private int[] entryOf = new int[1024];      // entry of each keyword id in the current segment
+        private int[] segmentOf = new int[1024];    // segment in which the keyword id was last seen
+
+        private int[] entryIds = new int[1024];     // keyword id of each entry
+        private int[] entrySums = new int[1024];    // summed frequency of each entry
+        private int entryCount;
+
+        private int[] segmentEnds = new int[16];    // entry count at each query
+        private int[] queryKinds = new int[16];     // TOP_K, PREFIX, COUNT, RANK or THRESHOLD
+        private int[] queries = new int[16];        // K or threshold of each query
+        private byte[][] keywords = new byte[16][]; // prefix or keyword of each query, null if none
+        private int queryCount;
+
+        private boolean stopped;                    // whether a stop line ended the range
+        private Exception failure;                  // error after the parsed lines, null if none
+
+        Range(){
+            Arrays.fill(segmentOf, -1);
+        }
+
+        /**
+         * Empties the range for the next byte range, keeping its dictionary and arrays.
+         */
+        void clear(){
+            Arrays.fill(segmentOf, 0, Math.min(dictionary.size(), segmentOf.length), -1);
+            dictionary.clear();
+            Arrays.fill(keywords, 0, queryCount, null);
+            entryCount = 0;
+            queryCount = 0;
+            stopped = false;
+            failure = null;
+        }
+
+        @Override
+        public void addKeyword(byte[] bytes, int offset, int length, int frequency){
+            int id = dictionary.getOrAdd(bytes, offset, length);
+            if(id >= segmentOf.length){
+                int oldLength = segmentOf.length;
+                entryOf = Arrays.copyOf(entryOf, oldLength * 2);
+                segmentOf = Arrays.copyOf(segmentOf, oldLength * 2);
+                Arrays.fill(segmentOf, oldLength, segmentOf.length, -1);
+            }
+
+            if(segmentOf[id] == queryCount){
+                entrySums[entryOf[id]] += frequency;
+                return;
+            }
+
+            if(entryCount == entryIds.length){
+                entryIds = Arrays.copyOf(entryIds, entryCount * 2);
+                entrySums = Arrays.copyOf(entrySums, entryCount * 2);
+            }
+            segmentOf[id] = queryCount;
+            entryOf[id] = entryCount;
+            entryIds[entryCount] = id;
+            entrySums[entryCount] = frequency;
+            ++entryCount;
+        }
+
+        @Override
+        public void query(int K){
+            addQuery(TOP_K, K, null, 0, 0);
+        }
+
+        @Override
+        public void prefixQuery(byte[] bytes, int offset, int length, int K){
+            addQuery(PREFIX, K, bytes, offset, length);
+        }
+
+        @Override
+        public void countQuery(byte[] bytes, int offset, int length){
+            addQuery(COUNT, 0, bytes, offset, length);
+        }
+
+        @Override
+        public void rankQuery(byte[] bytes, int offset, int length){
+            addQuery(RANK, 0, bytes, offset, length);
+        }
+
+        @Override
+        public void thresholdQuery(int threshold){
+            addQuery(THRESHOLD, threshold, null, 0, 0);
+        }
+
+        /**
+         * Ends the current segment with the query.
+         */
+        private void addQuery(int kind, int value, byte[] bytes, int offset, int length){
+            if(queryCount == queries.length){
+                segmentEnds = Arrays.copyOf(segmentEnds, queryCount * 2);
+                queryKinds = Arrays.copyOf(queryKinds, queryCount * 2);
+                queries = Arrays.copyOf(queries, queryCount * 2);
+                keywords = Arrays.copyOf(keywords, queryCount * 2);
+            }
+            segmentEnds[queryCount] = entryCount;
+            queryKinds[queryCount] = kind;
+            queries[queryCount] = value;
+            keywords[queryCount] = bytes == null ? null : Arrays.copyOfRange(bytes, offset, offset + length);
+            ++queryCount;
+        }
+
+        /**
+         * Passes the segments and queries to the listener in order.
+         * @return  -   false if the parsing must stop after this range
+         */
+        boolean apply(KeywordListener listener) throws IOException{
+            int entry = 0;
+            for(int query = 0; query <= queryCount; ++query){
+                int segmentEnd = query < queryCount ? segmentEnds[query] : entryCount;
+                for(; entry < segmentEnd; ++entry)
+                    dictionary.addTo(listener, entryIds[entry], entrySums[entry]);
+                if(query < queryCount)
+                    applyQuery(listener, query);
+            }
+
+            if(failure instanceof IOException)
+                throw (IOException) failure;
+            if(failure != null)
+                throw (RuntimeException) failure;
+            return !stopped;
+        }
+
+        private void applyQuery(KeywordListener listener, int query) throws IOException{
+            byte[] keyword = keywords[query];
+            switch(queryKinds[query]){
+                case TOP_K:
+                    listener.query(queries[query]);
+                    break;
+                case PREFIX:
+                    listener.prefixQuery(keyword, 0, keyword.length, queries[query]);
+                    break;
+                case COUNT:
+                    listener.countQuery(keyword, 0, keyword.length);
+                    break;
+                case RANK:
+                    listener.rankQuery(keyword, 0, keyword.length);
+                    break;
+                default:
+                    listener.thresholdQuery(queries[query]);
+            }
+        }
+    }
+}
@@ -0,0 +1,111 @@
+import java.io.*;
+import java.util.Random;
+
+/**
+ *  Compares the throughput of the old BufferedReader.readLine() based
+ *  parsing with KeywordParser. Both only parse the lines and add up the
+ *  keyword hashes and frequencies, so no heap work is measured.
+ *
+ *  Usage: java ParserComparison [input file]
+ *  Without an input file, a file with 20 million lines is generated.
+ */
+public class ParserComparison {
+
+    private static final int GENERATED_LINES = 20000000;
+    private static final int ROUNDS = 5;
+
+    private static long checksum;       // keeps the parsing from being optimized away
+
+    public static void main(String[] args) throws IOException{
+        File inputFile;
+        if(args.length > 0){
+            inputFile = new File(args[0]);
+        }else{
+            inputFile = File.createTempFile("keywords", ".txt");
+            inputFile.deleteOnExit();
+            generate(inputFile, GENERATED_LINES, 1000);
+        }
+
+        double megabytes = inputFile.length() / 1e6;
+        System.out.printf("input: %s (%.1f MB)%n", inputFile, megabytes);
+
+        for(int round = 1; round <= ROUNDS; ++round){
+            long start = System.nanoTime();
+            long readerChecksum = parseWithReader(inputFile);
+            double readerSeconds = (System.nanoTime() - start) / 1e9;
+
+            start = System.nanoTime();
+            long parserChecksum = parseWithParser(inputFile);
+            double parserSeconds = (System.nanoTime() - start) / 1e9;
+
+            if(readerChecksum != parserChecksum)
+                throw new IllegalStateException("parsers disagree");
+
+            System.out.printf("round %d: readLine %7.1f MB/s, KeywordParser %7.1f MB/s (%.1fx)%n",
+                    round, megabytes / readerSeconds, megabytes / parserSeconds, readerSeconds / parserSeconds);
+        }
+    }
+
+    /**
+     * Parses the lines the way keywordcounter used to.
+     */
+    private static long parseWithReader(File inputFile) throws IOException{
+        long sum = 0;
+        try (BufferedReader fileReader = new BufferedReader(new FileReader(inputFile))){
+            String line;
+            while((line = fileReader.readLine()) != null){
+                if(line.charAt(0) == '$'){
+                    int spaceIndex = line.indexOf(' ');
+                    String word = line.substring(1, spaceIndex);
+                    int frequency = Integer.parseInt(line.substring(spaceIndex + 1));
+                    sum += word.length() * 31L + frequency;
+                }else if(Character.isDigit(line.charAt(0))){
+                    sum += Integer.parseInt(line);
+                }else{
+                    break;
+                }
+            }
+        }
+        checksum += sum;
+        return sum;
+    }
+
+    private static long parseWithParser(File inputFile) throws IOException{
+        long[] sum = new long[1];
+        new KeywordParser(new KeywordListener(){
+            @Override
+            public void addKeyword(byte[] bytes, int offset, int length, int frequency){
+                sum[0] += length * 31L + frequency;
+            }
+
+            @Override
+            public void query(int K){
+                sum[0] += K;
+            }
+        }).parse(inputFile);
+        checksum += sum[0];
+        return sum[0];
+    }
+
+    /**
+     * Writes lines with skewed keywords and a query every queryInterval lines.
+     */
+    static void generate(File file, int lines, int queryInterval) throws IOException{
+        Random random = new Random(11);
+        try (BufferedWriter fileWriter = new BufferedWriter(new FileWriter(file), 1 << 16)){
+            for(int i = 1; i <= lines; ++i){
+                if(i % queryInterval == 0){
+                    fileWriter.write(Integer.toString(1 + random.nextInt(20)));
+                }else{
+                    double skew = random.nextDouble();
+                    fileWriter.write("$keyword");
+                    fileWriter.write(Integer.toString((int) (1000000 * skew * skew * skew)));
+                    fileWriter.write(' ');
+                    fileWriter.write(Integer.toString(1 + random.nextInt(100)));
+                }
+                fileWriter.write('\n');
+            }
+            fileWriter.write("stop\n");
+        }
+    }
+}
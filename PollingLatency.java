@@ -0,0 +1,124 @@
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ *  Measures the latency of each keyword update while another thread polls
+ *  the top 1000 words, comparing two ways of answering the poll:
+ *
+ *  stop-the-world: the poller locks the counter and runs topK() on the heap,
+ *  so updates wait for the query.
+ *  view: the poller asks the updating thread for a VersionedCounts view,
+ *  which costs one copy of the page table, and runs topK() on the view.
+ *
+ *  Usage: java PollingLatency
+ */
+public class PollingLatency {
+
+    private static final int ROUNDS = 4;                // times the workload is added
+    private static final int QUERY_K = 1000;
+    private static final long POLL_INTERVAL_NANOS = 1000000;
+
+    public static void main(String[] args) throws InterruptedException{
+        byte[][] workload = keywords(HeapBenchmark.zipfWorkload());
+
+        // warm up
+        runStopTheWorld(workload);
+        runView(workload);
+
+        System.out.println("mode            polls     p50 ns     p99 ns   p99.9 ns     max ns");
+        runStopTheWorld(workload);
+        runView(workload);
+    }
+
+    private static byte[][] keywords(int[] indexes){
+        byte[][] keywords = new byte[indexes.length][];
+        for(int i = 0; i < indexes.length; ++i)
+            keywords[i] = ("keyword" + indexes[i]).getBytes(StandardCharsets.UTF_8);
+        return keywords;
+    }
+
+    private static void runStopTheWorld(byte[][] workload) throws InterruptedException{
+        keywordcounter counter = new keywordcounter(null);
+        long[] latencies = new long[workload.length * ROUNDS];
+        int[] polls = new int[1];
+        AtomicBoolean done = new AtomicBoolean();
+
+        Thread poller = new Thread(() -> {
+            while(!done.get()){
+                synchronized (counter){
+                    counter.topK(QUERY_K);
+                }
+                ++polls[0];
+                LockSupport.parkNanos(POLL_INTERVAL_NANOS);
+            }
+        });
+        poller.start();
+
+        for(int i = 0; i < latencies.length; ++i){
+            byte[] keyword = workload[i % workload.length];
+            long start = System.nanoTime();
+            synchronized (counter){
+                counter.addKeyword(keyword, 0, keyword.length, 1);
+            }
+            latencies[i] = System.nanoTime() - start;
+        }
+
+        done.set(true);
+        poller.join();
+        print("stop-the-world", polls[0], latencies);
+    }
+
+    private static void runView(byte[][] workload) throws InterruptedException{
+        keywordcounter counter = new keywordcounter(null);
+        counter.keepVersionedCounts();
+        long[] latencies = new long[workload.length * ROUNDS];
+        int[] polls = new int[1];
+        AtomicBoolean done = new AtomicBoolean();
+
+        // the poller leaves a request, the updating thread answers it with a view
+        AtomicReference<VersionedCounts.View> handoff = new AtomicReference<>();
+        VersionedCounts.View request = new VersionedCounts().view(null);
+
+        Thread poller = new Thread(() -> {
+            while(!done.get()){
+                handoff.set(request);
+                VersionedCounts.View view;
+                while((view = handoff.get()) == request && !done.get())
+                    Thread.onSpinWait();
+                if(view != request){
+                    view.topK(QUERY_K);
+                    ++polls[0];
+                }
+                LockSupport.parkNanos(POLL_INTERVAL_NANOS);
+            }
+        });
+        poller.start();
+
+        for(int i = 0; i < latencies.length; ++i){
+            byte[] keyword = workload[i % workload.length];
+            long start = System.nanoTime();
+            counter.addKeyword(keyword, 0, keyword.length, 1);
+            if(handoff.get() == request)
+                handoff.set(counter.view());
+            latencies[i] = System.nanoTime() - start;
+        }
+
+        done.set(true);
+        poller.join();
+        print("view", polls[0], latencies);
+    }
+
+    private static void print(String mode, int polls, long[] latencies){
+        Arrays.sort(latencies);
+        System.out.printf("%-14s %6d %10d %10d %10d %10d%n", mode, polls,
+                percentile(latencies, 0.5), percentile(latencies, 0.99),
+                percentile(latencies, 0.999), latencies[latencies.length - 1]);
+    }
+
+    private static long percentile(long[] sorted, double fraction){
+        return sorted[Math.min((int) (sorted.length * fraction), sorted.length - 1)];
+    }
+}
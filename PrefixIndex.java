@@ -0,0 +1,364 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Compressed trie over the keywords of a dictionary which answers "top K
+ * keywords starting with a prefix". Each edge holds the bytes of a whole
+ * chain of single child nodes, so the trie has at most two nodes per
+ * keyword. Each node caches the leaders of its subtree: its best N keywords
+ * in TOP_K_ORDER, kept up to date on every increment by walking from the
+ * node of the keyword up to the root.
+ *
+ * A prefix query walks down the prefix and returns the leaders of the node
+ * it ends in, so it takes time proportional to the prefix length plus K.
+ * Only a query for more than N keywords, or one on a node whose leaders
+ * were lost by a decrement, scans the subtree.
+ *
+ * Words with the same frequency are compared byte by byte, which is the
+ * same as comparing them as Strings for ASCII keywords.
+ */
+public class PrefixIndex {
+
+    public static final int DEFAULT_LEADERS = 10;      // keywords cached per trie node
+
+    private static final TrieNode[] NO_CHILDREN = new TrieNode[0];
+
+    private final KeywordDictionary dictionary;
+    private final int leaderCount;
+    private final TrieNode root;
+
+    private int[] frequency = new int[1024];                // frequency of each keyword id
+    private TrieNode[] terminal = new TrieNode[1024];       // node at which each keyword ends, null if not indexed
+
+    /**
+     * Node of the trie. The keyword of a node is the concatenation of the
+     * labels from the root to the node.
+     */
+    private final class TrieNode {
+        byte[] label;                       // bytes of the edge from the parent
+        TrieNode parent;
+        TrieNode[] children = NO_CHILDREN;
+        int childCount;
+        int keywordId = KeywordDictionary.NOT_FOUND;    // keyword ending at this node
+
+        int[] leaders;                      // best keyword ids of the subtree, in TOP_K_ORDER
+        int leaderSize;
+        boolean stale;                      // whether a decrement may have left the leaders wrong
+
+        TrieNode(byte[] label, TrieNode parent){
+            this.label = label;
+            this.parent = parent;
+            this.leaders = new int[leaderCount];
+        }
+
+        TrieNode getChild(byte first){
+            for(int i = 0; i < childCount; ++i){
+                if(children[i].label[0] == first)
+                    return children[i];
+            }
+            return null;
+        }
+
+        void addChild(TrieNode child){
+            if(childCount == children.length)
+                children = Arrays.copyOf(children, Math.max(2, childCount * 2));
+            children[childCount++] = child;
+        }
+
+        void removeChild(TrieNode child){
+            for(int i = 0; i < childCount; ++i){
+                if(children[i] == child){
+                    children[i] = children[--childCount];
+                    children[childCount] = null;
+                    return;
+                }
+            }
+        }
+
+        void replaceChild(TrieNode child, TrieNode replacement){
+            for(int i = 0; i < childCount; ++i){
+                if(children[i] == child)
+                    children[i] = replacement;
+            }
+        }
+    }
+
+    /**
+     * @param dictionary    -   dictionary giving the keyword ids
+     * @param leaderCount   -   keywords cached per trie node, the largest K answered without a scan
+     */
+    public PrefixIndex(KeywordDictionary dictionary, int leaderCount){
+        this.dictionary = dictionary;
+        this.leaderCount = Math.max(leaderCount, 1);
+        this.root = new TrieNode(new byte[0], null);
+    }
+
+    /**
+     * Adds the frequency to the keyword, inserting the keyword into the trie if it is new.
+     * @param id    -   keyword id
+     * @param frequency -   amount by which the frequency is incremented
+     */
+    public void add(int id, int frequency){
+        if(id >= terminal.length){
+            int length = Math.max(terminal.length * 2, id + 1);
+            terminal = Arrays.copyOf(terminal, length);
+            this.frequency = Arrays.copyOf(this.frequency, length);
+        }
+
+        boolean isNew = terminal[id] == null;
+        if(isNew)
+            terminal[id] = insert(id);
+        this.frequency[id] += frequency;
+
+        for(TrieNode node = terminal[id]; node != null; node = node.parent){
+            if(isNew || frequency >= 0)
+                increased(node, id);
+            else
+                decreased(node, id);
+        }
+    }
+
+    /**
+     * Removes the keyword from the trie, its id may then be added again for
+     * another keyword. A node left without a keyword is dropped if it is a
+     * leaf, or merged into its child if it has only one.
+     * @param id    -   keyword id
+     */
+    public void remove(int id){
+        if(id >= terminal.length || terminal[id] == null)
+            return;
+
+        TrieNode end = terminal[id];
+        for(TrieNode node = end; node != null; node = node.parent)
+            dropLeader(node, id);
+        end.keywordId = KeywordDictionary.NOT_FOUND;
+        terminal[id] = null;
+        frequency[id] = 0;
+
+        TrieNode node = end;
+        if(node != root && node.childCount == 0){
+            node.parent.removeChild(node);
+            node = node.parent;
+        }
+        if(node != root && node.childCount == 1 && node.keywordId == KeywordDictionary.NOT_FOUND){
+            // the child has the same subtree and so the same leaders
+            TrieNode child = node.children[0];
+            byte[] label = Arrays.copyOf(node.label, node.label.length + child.label.length);
+            System.arraycopy(child.label, 0, label, node.label.length, child.label.length);
+            child.label = label;
+            child.parent = node.parent;
+            node.parent.replaceChild(node, child);
+        }
+    }
+
+    /**
+     * Returns the top K keywords starting with the prefix in TOP_K_ORDER.
+     * @param prefix    -   buffer containing the prefix
+     * @param offset    -   offset of the prefix in the buffer
+     * @param length    -   length of the prefix
+     * @param K -   number of keywords to return
+     */
+    public List<Node> topK(byte[] prefix, int offset, int length, int K){
+        List<Node> topK = new ArrayList<>();
+        TrieNode node = find(prefix, offset, length);
+        if(node == null || K <= 0)
+            return topK;
+
+        if(node.stale || (K > node.leaderSize && node.leaderSize == leaderCount)){
+            int[] best = scan(node, Math.max(K, leaderCount));
+            if(node.stale){
+                node.leaderSize = Math.min(best.length, leaderCount);
+                System.arraycopy(best, 0, node.leaders, 0, node.leaderSize);
+                node.stale = false;
+            }
+            for(int i = 0; i < best.length && i < K; ++i)
+                topK.add(new Node(dictionary, best[i], frequency[best[i]]));
+            return topK;
+        }
+
+        for(int i = 0; i < node.leaderSize && i < K; ++i)
+            topK.add(new Node(dictionary, node.leaders[i], frequency[node.leaders[i]]));
+        return topK;
+    }
+
+    /**
+     * Finds the node of the keyword, splitting an edge or adding a leaf as needed.
+     */
+    private TrieNode insert(int id){
+        byte[] bytes = dictionary.getBytes(id);
+        int length = dictionary.getLength(id);
+        TrieNode node = root;
+        int i = 0;
+
+        while(i < length){
+            TrieNode child = node.getChild(bytes[i]);
+            if(child == null){
+                TrieNode leaf = new TrieNode(Arrays.copyOfRange(bytes, i, length), node);
+                node.addChild(leaf);
+                node = leaf;
+                break;
+            }
+
+            int common = 1;
+            while(common < child.label.length && i + common < length && child.label[common] == bytes[i + common])
+                ++common;
+
+            if(common < child.label.length){
+                // split the edge, the new middle node has the same subtree and so the same leaders
+                TrieNode middle = new TrieNode(Arrays.copyOf(child.label, common), node);
+                node.replaceChild(child, middle);
+                child.label = Arrays.copyOfRange(child.label, common, child.label.length);
+                child.parent = middle;
+                middle.addChild(child);
+                System.arraycopy(child.leaders, 0, middle.leaders, 0, child.leaderSize);
+                middle.leaderSize = child.leaderSize;
+                middle.stale = child.stale;
+                child = middle;
+            }
+
+            node = child;
+            i += common;
+        }
+
+        node.keywordId = id;
+        return node;
+    }
+
+    /**
+     * Finds the node of the shortest keyword starting with the prefix.
+     * @return  -   the node, null if no keyword starts with the prefix
+     */
+    private TrieNode find(byte[] prefix, int offset, int length){
+        TrieNode node = root;
+        int i = 0;
+
+        while(i < length){
+            node = node.getChild(prefix[offset + i]);
+            if(node == null)
+                return null;
+            // the prefix may end inside the label
+            for(int j = 0; j < node.label.length && i < length; ++j, ++i){
+                if(node.label[j] != prefix[offset + i])
+                    return null;
+            }
+        }
+        return node;
+    }
+
+    /**
+     * Updates the leaders of the node after the frequency of the keyword went up.
+     */
+    private void increased(TrieNode node, int id){
+        if(node.stale)
+            return;
+
+        int index = indexOf(node, id);
+        if(index < 0){
+            if(node.leaderSize < leaderCount){
+                index = node.leaderSize++;
+            }else if(before(id, node.leaders[leaderCount - 1])){
+                // the worst leader drops out
+                index = leaderCount - 1;
+            }else{
+                return;
+            }
+            node.leaders[index] = id;
+        }
+
+        for(; index > 0 && before(id, node.leaders[index - 1]); --index){
+            node.leaders[index] = node.leaders[index - 1];
+            node.leaders[index - 1] = id;
+        }
+    }
+
+    /**
+     * Updates the leaders of the node after the frequency of the keyword went down.
+     */
+    private void decreased(TrieNode node, int id){
+        if(node.stale)
+            return;
+
+        int index = indexOf(node, id);
+        if(index < 0)
+            return;
+
+        // with fewer leaders than the limit, every keyword of the subtree is a leader;
+        // otherwise a keyword outside the leaders may now be better
+        if(node.leaderSize == leaderCount){
+            node.stale = true;
+            return;
+        }
+        for(; index < node.leaderSize - 1 && before(node.leaders[index + 1], id); ++index){
+            node.leaders[index] = node.leaders[index + 1];
+            node.leaders[index + 1] = id;
+        }
+    }
+
+    /**
+     * Takes the keyword out of the leaders of the node before it is removed.
+     */
+    private void dropLeader(TrieNode node, int id){
+        if(node.stale)
+            return;
+
+        int index = indexOf(node, id);
+        if(index < 0)
+            return;
+
+        // a keyword outside the leaders may take its place
+        if(node.leaderSize == leaderCount){
+            node.stale = true;
+            return;
+        }
+        System.arraycopy(node.leaders, index + 1, node.leaders, index, node.leaderSize - index - 1);
+        --node.leaderSize;
+    }
+
+    /**
+     * Selects the best keywords of the subtree by visiting all of it.
+     * @param count -   number of keywords to select
+     * @return  -   up to count keyword ids in TOP_K_ORDER
+     */
+    private int[] scan(TrieNode node, int count){
+        // the worst of the selected keywords is at the head
+        PriorityQueue<Integer> best = new PriorityQueue<>(count, (a, b) -> before(a, b) ? 1 : a.equals(b) ? 0 : -1);
+        List<TrieNode> pending = new ArrayList<>();
+        pending.add(node);
+
+        while(!pending.isEmpty()){
+            TrieNode next = pending.remove(pending.size() - 1);
+            int id = next.keywordId;
+            if(id != KeywordDictionary.NOT_FOUND && (best.size() < count || before(id, best.peek()))){
+                if(best.size() == count)
+                    best.poll();
+                best.add(id);
+            }
+            for(int i = 0; i < next.childCount; ++i)
+                pending.add(next.children[i]);
+        }
+
+        int[] ids = new int[best.size()];
+        for(int i = ids.length - 1; i >= 0; --i)
+            ids[i] = best.poll();
+        return ids;
+    }
+
+    private int indexOf(TrieNode node, int id){
+        for(int i = 0; i < node.leaderSize; ++i){
+            if(node.leaders[i] == id)
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * @return  -   true if the first keyword comes before the second in TOP_K_ORDER
+     */
+    private boolean before(int id, int otherId){
+        if(frequency[id] != frequency[otherId])
+            return frequency[id] > frequency[otherId];
+        return dictionary.compare(id, otherId) < 0;
+    }
+}
@@ -0,0 +1,22 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * JFR event for one top K query, committed by HeapMetrics.
+ */
+@Name("keywordcounter.Query")
+@Label("Top K Query")
+@Category("Keyword Counter")
+@Description("Top K query of keywordcounter")
+class QueryEvent extends jdk.jfr.Event {
+
+    @Label("K")
+    int k;
+
+    @Label("Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long time;
+}
@@ -0,0 +1,238 @@
+import java.util.Arrays;
+
+/**
+ * Order statistics of the keyword frequencies, for count, rank and
+ * threshold queries. The frequencies of the keywords are kept by keyword id,
+ * and the distinct frequency values are kept in a treap in which each node
+ * holds how many keywords have its frequency and how many keywords its
+ * subtree holds. An increment moves the keyword from its old value to its
+ * new one, and the number of keywords above a frequency is summed along one
+ * path, so updates and queries take O(log d) for d distinct frequencies.
+ *
+ * The rank of a keyword is one more than the number of keywords with a
+ * higher frequency, so keywords with the same frequency share a rank.
+ */
+public class RankIndex {
+
+    private static final int NIL = 0;           // empty subtree, its total is always 0
+
+    private int[] frequency = new int[1024];    // frequency of each keyword id
+    private boolean[] indexed = new boolean[1024];
+    private int size;                           // number of keywords indexed
+
+    // treap nodes of the distinct frequencies, node 0 is NIL
+    private int[] value = new int[64];
+    private int[] count = new int[64];          // keywords having the value
+    private int[] total = new int[64];          // keywords in the subtree
+    private int[] left = new int[64];
+    private int[] right = new int[64];
+    private int[] priority = new int[64];
+    private int nodeCount = 1;
+    private int freeNode = NIL;                 // list of deleted nodes, linked by left
+    private int root = NIL;
+    private int seed = 0x2545f491;              // xorshift state for the priorities
+
+    /**
+     * Adds the frequency to the keyword, indexing the keyword if it is new.
+     * @param id    -   keyword id
+     * @param frequency -   amount by which the frequency is incremented
+     */
+    public void add(int id, int frequency){
+        if(id >= indexed.length){
+            int length = Math.max(indexed.length * 2, id + 1);
+            indexed = Arrays.copyOf(indexed, length);
+            this.frequency = Arrays.copyOf(this.frequency, length);
+        }
+
+        if(!indexed[id]){
+            indexed[id] = true;
+            ++size;
+        }else if(frequency != 0){
+            root = remove(root, this.frequency[id]);
+        }else{
+            return;
+        }
+        this.frequency[id] += frequency;
+        root = insert(root, this.frequency[id]);
+    }
+
+    /**
+     * Removes the keyword from the index, its id may then be indexed again.
+     * @param id    -   keyword id
+     */
+    public void remove(int id){
+        if(id >= indexed.length || !indexed[id])
+            return;
+        root = remove(root, frequency[id]);
+        indexed[id] = false;
+        frequency[id] = 0;
+        --size;
+    }
+
+    /**
+     * @return  -   frequency of the keyword, 0 if it was never counted
+     */
+    public int getFrequency(int id){
+        return id < indexed.length ? frequency[id] : 0;
+    }
+
+    /**
+     * @return  -   1 for the keywords with the highest frequency, 0 if the keyword was never counted
+     */
+    public int rank(int id){
+        if(id >= indexed.length || !indexed[id])
+            return 0;
+        return countAbove(frequency[id]) + 1;
+    }
+
+    /**
+     * @return  -   number of keywords whose frequency is at least the threshold
+     */
+    public int countAtLeast(int threshold){
+        return threshold == Integer.MIN_VALUE ? size : countAbove(threshold - 1);
+    }
+
+    /**
+     * @return  -   number of keywords whose frequency is larger than the given one
+     */
+    public int countAbove(int frequency){
+        int above = 0;
+        int node = root;
+        while(node != NIL){
+            if(value[node] > frequency){
+                above += count[node] + total[right[node]];
+                node = left[node];
+            }else{
+                node = right[node];
+            }
+        }
+        return above;
+    }
+
+    /**
+     * @return  -   number of keywords indexed
+     */
+    public int size(){
+        return size;
+    }
+
+    /**
+     * Adds one keyword with the frequency to the subtree.
+     * @return  -   new root of the subtree
+     */
+    private int insert(int node, int frequency){
+        if(node == NIL)
+            return newNode(frequency);
+
+        if(frequency == value[node]){
+            ++count[node];
+        }else if(frequency < value[node]){
+            // the arrays may grow in the call, so they are read after it
+            int child = insert(left[node], frequency);
+            left[node] = child;
+            if(priority[child] > priority[node])
+                node = rotateRight(node);
+        }else{
+            int child = insert(right[node], frequency);
+            right[node] = child;
+            if(priority[child] > priority[node])
+                node = rotateLeft(node);
+        }
+        update(node);
+        return node;
+    }
+
+    /**
+     * Removes one keyword with the frequency from the subtree, which must hold it.
+     * @return  -   new root of the subtree
+     */
+    private int remove(int node, int frequency){
+        if(frequency < value[node]){
+            left[node] = remove(left[node], frequency);
+        }else if(frequency > value[node]){
+            right[node] = remove(right[node], frequency);
+        }else if(count[node] > 1){
+            --count[node];
+        }else{
+            return delete(node);
+        }
+        update(node);
+        return node;
+    }
+
+    /**
+     * Rotates the node down until it is a leaf and frees it.
+     * @return  -   new root of the subtree
+     */
+    private int delete(int node){
+        if(left[node] == NIL || right[node] == NIL){
+            int child = left[node] == NIL ? right[node] : left[node];
+            left[node] = freeNode;
+            freeNode = node;
+            return child;
+        }
+
+        int top;
+        if(priority[left[node]] > priority[right[node]]){
+            top = rotateRight(node);
+            right[top] = delete(node);
+        }else{
+            top = rotateLeft(node);
+            left[top] = delete(node);
+        }
+        update(top);
+        return top;
+    }
+
+    private int rotateRight(int node){
+        int top = left[node];
+        left[node] = right[top];
+        right[top] = node;
+        update(node);
+        update(top);
+        return top;
+    }
+
+    private int rotateLeft(int node){
+        int top = right[node];
+        right[node] = left[top];
+        left[top] = node;
+        update(node);
+        update(top);
+        return top;
+    }
+
+    private void update(int node){
+        total[node] = count[node] + total[left[node]] + total[right[node]];
+    }
+
+    private int newNode(int frequency){
+        int node = freeNode;
+        if(node != NIL){
+            freeNode = left[node];
+        }else{
+            if(nodeCount == value.length){
+                int length = nodeCount * 2;
+                value = Arrays.copyOf(value, length);
+                count = Arrays.copyOf(count, length);
+                total = Arrays.copyOf(total, length);
+                left = Arrays.copyOf(left, length);
+                right = Arrays.copyOf(right, length);
+                priority = Arrays.copyOf(priority, length);
+            }
+            node = nodeCount++;
+        }
+
+        seed ^= seed << 13;
+        seed ^= seed >>> 17;
+        seed ^= seed << 5;
+        value[node] = frequency;
+        count[node] = 1;
+        total[node] = 1;
+        left[node] = NIL;
+        right[node] = NIL;
+        // NIL has priority 0, so a node is never rotated below it
+        priority[node] = (seed >>> 1) | 1;
+        return node;
+    }
+}
@@ -0,0 +1,59 @@
+import java.io.*;
+
+/**
+ *  Compares keywordcounter on an input file in the text format with the
+ *  replay of the same file converted by BinaryLog. Both count the keywords
+ *  into a Fibonacci heap and answer the queries.
+ *
+ *  Usage: java ReplayComparison [input file]
+ *  Without an input file, a file with 20 million lines is generated.
+ */
+public class ReplayComparison {
+
+    private static final int GENERATED_LINES = 20000000;
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) throws IOException{
+        File textFile;
+        if(args.length > 0){
+            textFile = new File(args[0]);
+        }else{
+            textFile = File.createTempFile("keywords", ".txt");
+            textFile.deleteOnExit();
+            ParserComparison.generate(textFile, GENERATED_LINES, 100000);
+        }
+
+        File binaryFile = File.createTempFile("keywords", ".kwcl");
+        binaryFile.deleteOnExit();
+        long start = System.nanoTime();
+        BinaryLog.convert(textFile, binaryFile);
+        System.out.printf("text %.1f MB, binary %.1f MB, converted in %.2f s%n",
+                textFile.length() / 1e6, binaryFile.length() / 1e6, (System.nanoTime() - start) / 1e9);
+
+        PrintStream out = System.out;
+        for(int round = 1; round <= ROUNDS; ++round){
+            double textSeconds;
+            double binarySeconds;
+            try (BufferedWriter fileWriter = new BufferedWriter(Writer.nullWriter())){
+                // writeOutput() also prints the results
+                System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+                // the counter of the previous run is garbage, so it is collected before the timing
+                System.gc();
+                start = System.nanoTime();
+                new KeywordParser(new keywordcounter(fileWriter)).parse(textFile);
+                textSeconds = (System.nanoTime() - start) / 1e9;
+
+                System.gc();
+                start = System.nanoTime();
+                BinaryLog.replay(binaryFile, new keywordcounter(fileWriter));
+                binarySeconds = (System.nanoTime() - start) / 1e9;
+            }finally{
+                System.setOut(out);
+            }
+
+            System.out.printf("round %d: text %6.2f s, binary %6.2f s (%.1fx)%n",
+                    round, textSeconds, binarySeconds, textSeconds / binarySeconds);
+        }
+    }
+}
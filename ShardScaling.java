@@ -0,0 +1,57 @@
+import java.io.*;
+
+/**
+ *  Measures ingestion throughput of keywordcounter with 1, 2, 4, ...
+ *  shards up to the number of cores. The query results are discarded.
+ *
+ *  Usage: java ShardScaling [input file]
+ *  Without an input file, a file with 20 million lines is generated.
+ */
+public class ShardScaling {
+
+    private static final int GENERATED_LINES = 20000000;
+    private static final int QUERY_INTERVAL = 1000000;
+
+    public static void main(String[] args) throws IOException{
+        File inputFile;
+        if(args.length > 0){
+            inputFile = new File(args[0]);
+        }else{
+            inputFile = File.createTempFile("keywords", ".txt");
+            inputFile.deleteOnExit();
+            ParserComparison.generate(inputFile, GENERATED_LINES, QUERY_INTERVAL);
+        }
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        double megabytes = inputFile.length() / 1e6;
+        System.out.printf("input: %s (%.1f MB), cores: %d%n", inputFile, megabytes, cores);
+
+        // warm up
+        run(inputFile, 1);
+
+        for(int shards = 1; shards <= cores; shards *= 2){
+            long start = System.nanoTime();
+            run(inputFile, shards);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("shards %3d: %7.1f MB/s%n", shards, megabytes / seconds);
+        }
+    }
+
+    private static void run(File inputFile, int shards) throws IOException{
+        PrintStream out = System.out;
+        try (BufferedWriter fileWriter = new BufferedWriter(Writer.nullWriter())){
+            // writeOutput() also prints the results
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+            if(shards == 1){
+                new KeywordParser(new keywordcounter(fileWriter)).parse(inputFile);
+            }else{
+                try (ShardedKeywordCounter counter = new ShardedKeywordCounter(shards, fileWriter)){
+                    new KeywordParser(counter).parse(inputFile);
+                }
+            }
+        }finally{
+            System.setOut(out);
+        }
+    }
+}
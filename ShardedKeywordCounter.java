@@ -0,0 +1,328 @@
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Keyword counter which splits the keywords into shards by hash. Each shard
+ * has its own dictionary and heap (a keywordcounter) and its own thread, and
+ * a keyword always goes to the same shard, so no locking is needed.
+ *
+ * The parser thread copies the keyword lines into batches, one per shard.
+ * A query line is a barrier: all batches are handed to the shards, each
+ * shard returns its top K once it has applied everything before the query,
+ * and the shard results are merged with a K-way merge. Ties are broken the
+ * same way as in MaxFibonacciHeap.topK(), so the output is identical to the
+ * single threaded keywordcounter.
+ */
+public class ShardedKeywordCounter implements KeywordListener, Closeable {
+
+    private static final int BATCHES_PER_SHARD = 4;     // batches a shard can have in flight
+
+    private final Shard[] shards;
+    private final BufferedWriter fileWriter;
+    private boolean prefixes;                           // whether the shards index prefixes
+    private boolean ranks;                              // whether the shards index ranks
+
+    /**
+     * @param shardCount    -   number of shards, usually the number of cores
+     * @param fileWriter    -   writer for the query results
+     */
+    public ShardedKeywordCounter(int shardCount, BufferedWriter fileWriter){
+        this.fileWriter = fileWriter;
+        this.shards = new Shard[shardCount];
+        for(int i = 0; i < shardCount; ++i)
+            shards[i] = new Shard();
+    }
+
+    @Override
+    public void addKeyword(byte[] bytes, int offset, int length, int frequency) throws IOException{
+        Shard shard = shardOf(bytes, offset, length);
+        if(!shard.batch.add(bytes, offset, length, frequency)){
+            shard.submitBatch();
+            shard.batch.add(bytes, offset, length, frequency);
+        }
+    }
+
+    @Override
+    public void query(int K) throws IOException{
+        keywordcounter.writeOutput(topK(K), fileWriter);
+    }
+
+    @Override
+    public void prefixQuery(byte[] bytes, int offset, int length, int K) throws IOException{
+        if(!prefixes)
+            throw new IOException("Prefix queries need --prefix N");
+        keywordcounter.writeOutput(topK(bytes, offset, length, K), fileWriter);
+    }
+
+    @Override
+    public void countQuery(byte[] bytes, int offset, int length) throws IOException{
+        if(!ranks)
+            throw new IOException("Count queries need --ranks");
+        keywordcounter.writeLine(count(bytes, offset, length) + "\n", fileWriter);
+    }
+
+    @Override
+    public void rankQuery(byte[] bytes, int offset, int length) throws IOException{
+        if(!ranks)
+            throw new IOException("Rank queries need --ranks");
+        keywordcounter.writeLine(rank(bytes, offset, length) + "\n", fileWriter);
+    }
+
+    @Override
+    public void thresholdQuery(int threshold) throws IOException{
+        if(!ranks)
+            throw new IOException("Threshold queries need --ranks");
+        keywordcounter.writeLine(countAtLeast(threshold) + "\n", fileWriter);
+    }
+
+    /**
+     * Indexes the keywords of every shard for prefix queries, before any keyword line.
+     * @param leaders   -   keywords cached per trie node
+     */
+    public void indexPrefixes(int leaders){
+        for(Shard shard : shards)
+            shard.counter.indexPrefixes(leaders);
+        prefixes = true;
+    }
+
+    /**
+     * Indexes the frequencies of every shard for count, rank and threshold
+     * queries, before any keyword line.
+     */
+    public void indexRanks(){
+        for(Shard shard : shards)
+            shard.counter.indexRanks();
+        ranks = true;
+    }
+
+    /**
+     * Limits the keywords kept by the shards, before any keyword line. Each
+     * shard keeps its part of the limits and evicts its own coldest keywords.
+     * @param maxKeywords   -   keywords kept, 0 for no limit
+     * @param maxMemory -   estimated bytes kept, 0 for no limit
+     */
+    public void limitKeywords(int maxKeywords, long maxMemory){
+        for(Shard shard : shards)
+            shard.counter.limitKeywords((maxKeywords + shards.length - 1) / shards.length,
+                    (maxMemory + shards.length - 1) / shards.length);
+    }
+
+    /**
+     * Returns the frequency of the keyword from the shard owning it. Needs indexRanks().
+     * @return  -   the frequency, 0 if the keyword was never counted
+     */
+    public int count(byte[] bytes, int offset, int length) throws IOException{
+        byte[] keyword = Arrays.copyOfRange(bytes, offset, offset + length);
+        return get(ask(shardOf(bytes, offset, length), counter -> counter.count(keyword, 0, keyword.length)));
+    }
+
+    /**
+     * Returns the rank of the keyword: one more than the number of keywords
+     * of all shards with a higher frequency. Needs indexRanks().
+     * @return  -   the rank, 0 if the keyword was never counted
+     */
+    public int rank(byte[] bytes, int offset, int length) throws IOException{
+        int frequency = count(bytes, offset, length);
+        if(frequency == 0)
+            return 0;
+        return sum(counter -> counter.countAbove(frequency)) + 1;
+    }
+
+    /**
+     * Returns the number of keywords of all shards with a frequency of at
+     * least the threshold. Needs indexRanks().
+     */
+    public int countAtLeast(int threshold) throws IOException{
+        return sum(counter -> counter.countAtLeast(threshold));
+    }
+
+    /**
+     * Waits for the shards to apply every keyword line so far and
+     * merges their top K nodes.
+     * @param K -   number of nodes to return
+     */
+    public List<Node> topK(int K) throws IOException{
+        return merge(K, counter -> counter.topK(K));
+    }
+
+    /**
+     * Waits for the shards to apply every keyword line so far and merges
+     * their top K nodes starting with the prefix. Needs indexPrefixes().
+     * @param bytes -   buffer containing the prefix
+     * @param offset    -   offset of the prefix in the buffer
+     * @param length    -   length of the prefix
+     * @param K -   number of nodes to return
+     */
+    public List<Node> topK(byte[] bytes, int offset, int length, int K) throws IOException{
+        // the parser reuses its buffer, and the shards read the prefix later
+        byte[] prefix = Arrays.copyOfRange(bytes, offset, offset + length);
+        return merge(K, counter -> counter.topK(prefix, 0, prefix.length, K));
+    }
+
+    /**
+     * Runs the query on every shard once it has applied every keyword line
+     * so far, and merges the results.
+     * @param K -   number of nodes to return
+     * @param query -   gives the nodes of a shard in TOP_K_ORDER
+     */
+    private List<Node> merge(int K, Function<keywordcounter, List<Node>> query) throws IOException{
+        List<Future<List<Node>>> shardResults = new ArrayList<>();
+        for(Shard shard : shards)
+            shardResults.add(ask(shard, query));
+
+        // each shard result is in TOP_K_ORDER, so the next node is always the head of a list
+        PriorityQueue<ShardCursor> heads = new PriorityQueue<>(
+                (a, b) -> MaxFibonacciHeap.TOP_K_ORDER.compare(a.head(), b.head()));
+        for(Future<List<Node>> shardResult : shardResults){
+            List<Node> nodes = get(shardResult);
+            if(!nodes.isEmpty())
+                heads.add(new ShardCursor(nodes));
+        }
+
+        List<Node> topK = new ArrayList<>();
+        while(topK.size() < K && !heads.isEmpty()){
+            ShardCursor cursor = heads.poll();
+            topK.add(cursor.head());
+            if(cursor.advance())
+                heads.add(cursor);
+        }
+        return topK;
+    }
+
+    /**
+     * Runs the count on every shard once it has applied every keyword line
+     * so far, and adds the results.
+     */
+    private int sum(Function<keywordcounter, Integer> count) throws IOException{
+        List<Future<Integer>> shardResults = new ArrayList<>();
+        for(Shard shard : shards)
+            shardResults.add(ask(shard, count));
+
+        int sum = 0;
+        for(Future<Integer> shardResult : shardResults)
+            sum += get(shardResult);
+        return sum;
+    }
+
+    /**
+     * Runs the query on the shard once it has applied every keyword line so far.
+     */
+    private static <T> Future<T> ask(Shard shard, Function<keywordcounter, T> query) throws IOException{
+        shard.submitBatch();
+        return shard.executor.submit(() -> query.apply(shard.counter));
+    }
+
+    /**
+     * Returns the shard which owns the keyword.
+     */
+    private Shard shardOf(byte[] bytes, int offset, int length){
+        // the dictionary uses the low bits of the hash, so the shard is picked with the high bits
+        int hash = KeywordDictionary.hash(bytes, offset, length);
+        return shards[(int) ((Integer.toUnsignedLong(hash) * shards.length) >>> 32)];
+    }
+
+    /**
+     * Applies the remaining batches and stops the shard threads.
+     */
+    @Override
+    public void close() throws IOException{
+        for(Shard shard : shards)
+            shard.submitBatch();
+        for(Shard shard : shards)
+            shard.executor.shutdown();
+
+        try{
+            for(Shard shard : shards)
+                shard.executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        }catch (InterruptedException ie){
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while stopping the shards");
+        }
+    }
+
+    private static <T> T get(Future<T> future) throws IOException{
+        try{
+            return future.get();
+        }catch (InterruptedException ie){
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for a shard");
+        }catch (ExecutionException ee){
+            throw new IOException("shard failed", ee.getCause());
+        }
+    }
+
+    /**
+     * One shard: a counter, the thread applying batches to it, and
+     * the batches which are reused between the two threads.
+     */
+    private static class Shard {
+        final keywordcounter counter = new keywordcounter(null);
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        final BlockingQueue<KeywordBatch> freeBatches = new ArrayBlockingQueue<>(BATCHES_PER_SHARD);
+        KeywordBatch batch = new KeywordBatch();
+
+        Shard(){
+            for(int i = 1; i < BATCHES_PER_SHARD; ++i)
+                freeBatches.add(new KeywordBatch());
+        }
+
+        /**
+         * Hands the current batch to the shard thread and takes a free one.
+         * Waits if the shard thread is behind by BATCHES_PER_SHARD batches.
+         */
+        void submitBatch() throws IOException{
+            if(batch.count == 0)
+                return;
+
+            KeywordBatch full = batch;
+            executor.execute(() -> {
+                try{
+                    full.applyTo(counter);
+                }finally{
+                    freeBatches.add(full);
+                }
+            });
+
+            try{
+                batch = freeBatches.take();
+            }catch (InterruptedException ie){
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted while waiting for a free batch");
+            }
+        }
+    }
+
+    /**
+     * Position in the top K list of one shard.
+     */
+    private static class ShardCursor {
+        private final List<Node> nodes;
+        private int index;
+
+        ShardCursor(List<Node> nodes){
+            this.nodes = nodes;
+        }
+
+        Node head(){
+            return nodes.get(index);
+        }
+
+        boolean advance(){
+            return ++index < nodes.size();
+        }
+    }
+}
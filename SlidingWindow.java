@@ -0,0 +1,112 @@
+import java.util.Arrays;
+
+/**
+ * Per-epoch delta buffers of a sliding window over the keyword lines. Time
+ * is counted in keyword lines and split into epochs of a fixed number of
+ * lines; the window is the current epoch and the epochs - 1 before it. Each
+ * epoch sums the increments of the keywords counted in it, one entry per
+ * keyword, in a ring of buffers. When a new epoch starts, the buffer of the
+ * epoch leaving the window is passed back negated and reused, so expiring
+ * an epoch costs one update per keyword it touched, whatever the size of
+ * the vocabulary. The window also knows in how many of its epochs each
+ * keyword was counted, so a keyword which leaves the window entirely can
+ * be removed.
+ */
+public class SlidingWindow {
+
+    private final int epochLines;               // keyword lines in an epoch
+    private final int[][] epochIds;             // keyword ids counted in each epoch of the ring
+    private final int[][] epochSums;            // summed increment of each of these keywords
+    private final int[] epochSizes;             // number of keywords counted in each epoch of the ring
+    private long epoch;                         // current epoch, its buffer is epoch % epochs
+
+    private int[] entryOf = new int[1024];      // entry of each keyword id in the current epoch
+    private long[] epochOf = new long[1024];    // epoch in which the keyword id was last counted
+    private int[] epochCount = new int[1024];   // epochs of the window in which each keyword id was counted
+
+    /**
+     * @param epochLines    -   keyword lines in an epoch
+     * @param epochs    -   epochs in the window, including the current one
+     */
+    public SlidingWindow(int epochLines, int epochs){
+        this.epochLines = epochLines;
+        this.epochIds = new int[epochs][16];
+        this.epochSums = new int[epochs][16];
+        this.epochSizes = new int[epochs];
+        Arrays.fill(epochOf, -1);
+    }
+
+    /**
+     * Adds the increment of the keyword to the current epoch.
+     * @param id    -   keyword id
+     * @param frequency -   increment
+     */
+    public void add(int id, int frequency){
+        if(id >= epochOf.length){
+            int oldLength = epochOf.length;
+            int length = Math.max(oldLength * 2, id + 1);
+            entryOf = Arrays.copyOf(entryOf, length);
+            epochOf = Arrays.copyOf(epochOf, length);
+            epochCount = Arrays.copyOf(epochCount, length);
+            Arrays.fill(epochOf, oldLength, length, -1);
+        }
+
+        int slot = (int) (epoch % epochSizes.length);
+        if(epochOf[id] == epoch){
+            epochSums[slot][entryOf[id]] += frequency;
+            return;
+        }
+
+        int entry = epochSizes[slot]++;
+        if(entry == epochIds[slot].length){
+            epochIds[slot] = Arrays.copyOf(epochIds[slot], entry * 2);
+            epochSums[slot] = Arrays.copyOf(epochSums[slot], entry * 2);
+        }
+        epochIds[slot][entry] = id;
+        epochSums[slot][entry] = frequency;
+        epochOf[id] = epoch;
+        entryOf[id] = entry;
+        ++epochCount[id];
+    }
+
+    /**
+     * Tells if the keyword was counted in any epoch of the window.
+     * @param id    -   keyword id
+     */
+    public boolean contains(int id){
+        return id < epochCount.length && epochCount[id] > 0;
+    }
+
+    /**
+     * Tells if the keyword line starts a new epoch, so that advance() has to be called before counting it.
+     * @param line  -   number of the keyword line, starting from 1
+     */
+    public boolean isNewEpoch(long line){
+        return (line - 1) / epochLines != epoch;
+    }
+
+    /**
+     * Moves the window to the epoch of the keyword line. The increments of
+     * each epoch leaving the window are passed to the consumer negated, one
+     * per keyword, and their buffers are emptied for the new epochs. A
+     * keyword is no longer contained in the window when it is passed from
+     * its last epoch, and the sum passed may then be 0.
+     * @param line  -   number of the keyword line, starting from 1
+     * @param expired   -   receives the negated increments
+     */
+    public void advance(long line, IncrementBuffer.Consumer expired){
+        long newEpoch = (line - 1) / epochLines;
+        // after a whole window of epochs every buffer has expired
+        for(long next = Math.max(epoch + 1, newEpoch - epochSizes.length + 1); next <= newEpoch; ++next){
+            int slot = (int) (next % epochSizes.length);
+            for(int entry = 0; entry < epochSizes[slot]; ++entry){
+                int id = epochIds[slot][entry];
+                --epochCount[id];
+                if(epochSums[slot][entry] != 0 || epochCount[id] == 0)
+                    expired.accept(id, -epochSums[slot][entry]);
+            }
+            epochSizes[slot] = 0;
+        }
+        epoch = newEpoch;
+    }
+}
@@ -0,0 +1,122 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Binary snapshot of the keyword counts, optionally with the shape of the heap.
+ *
+ * The file has a header (magic, version, flags, number of keywords), one
+ * record per heap node in MaxFibonacciHeap.preorder() order, and a CRC32C of
+ * everything before it. A record is the varint length of the keyword, the
+ * keyword bytes, the zigzag varint frequency and, if the shape is saved, the
+ * varint of (degree << 1 | child cut). Loading checks the CRC32C first, so
+ * nothing of a corrupt or truncated file reaches the loader, then reads the
+ * records once and passes the nodes to MaxFibonacciHeap.load(), so no insert
+ * is done.
+ */
+public class Snapshot {
+
+    private static final int MAGIC = 0x4b574353;    // "KWCS"
+    private static final byte VERSION = 1;
+    private static final byte WITH_SHAPE = 1;       // flag set if the records have degrees
+
+    /**
+     * Receives the nodes read from a snapshot.
+     */
+    public interface Loader {
+        /**
+         * Called before the nodes.
+         * @param count -   number of nodes in the snapshot
+         */
+        void start(int count);
+
+        /**
+         * @param keyword   -   buffer containing the keyword, only valid during the call
+         * @param length    -   length of the keyword
+         * @param frequency -   frequency of the keyword
+         * @param degree    -   number of children in the saved heap, 0 if the shape was not saved
+         * @param childCut  -   child cut value in the saved heap
+         */
+        void node(byte[] keyword, int length, int frequency, int degree, boolean childCut);
+    }
+
+    /**
+     * Writes the nodes of the heap to the file. The keyword bytes are copied
+     * from the dictionary arena into one reused buffer, so no String or array
+     * is created per node.
+     * @param heap  -   heap to save
+     * @param dictionary    -   dictionary holding the keyword of every node
+     * @param withShape -   whether the degrees and child cuts are saved
+     * @param file  -   snapshot file, replaced if it exists
+     */
+    public static void save(MaxFibonacciHeap heap, KeywordDictionary dictionary, boolean withShape, File file) throws IOException{
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)){
+
+            BinaryOutput output = new BinaryOutput(channel);
+            output.buffer.putInt(MAGIC);
+            output.buffer.put(VERSION);
+            output.buffer.put(withShape ? WITH_SHAPE : 0);
+            output.writeVarint(dictionary.keywordCount());
+
+            IOException[] failure = new IOException[1];
+            heap.preorder(node -> {
+                if(failure[0] != null)
+                    return;
+                try{
+                    int id = node.getKeywordId();
+                    int length = dictionary.getLength(id);
+                    output.writeVarint(length);
+                    output.write(dictionary.getBytes(id), 0, length);
+                    output.writeZigzag(node.getFrequency());
+                    if(withShape)
+                        output.writeVarint(node.getDegree() << 1 | (node.hadChildCut() ? 1 : 0));
+                }catch (IOException ioe){
+                    failure[0] = ioe;
+                }
+            });
+            if(failure[0] != null)
+                throw failure[0];
+
+            output.finish();
+        }
+    }
+
+    /**
+     * Reads the snapshot, passing each node to the loader in the saved order.
+     * @param file  -   snapshot file
+     * @param loader    -   receives the nodes
+     * @return  -   true if the snapshot has the heap shape
+     */
+    public static boolean load(File file, Loader loader) throws IOException{
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)){
+            BinaryInput.checkFile(channel, file);
+            BinaryInput input = new BinaryInput(channel);
+
+            if(input.readInt() != MAGIC)
+                throw new IOException(file + " is not a keyword counter snapshot");
+            if(input.readByte() != VERSION)
+                throw new IOException(file + " has an unsupported snapshot version");
+            boolean withShape = input.readByte() == WITH_SHAPE;
+
+            int count = input.readVarint();
+            loader.start(count);
+            byte[] keyword = new byte[64];
+            for(int i = 0; i < count; ++i){
+                int length = input.readVarint();
+                if(length > keyword.length)
+                    keyword = new byte[Math.max(length, keyword.length * 2)];
+                input.read(keyword, length);
+
+                int frequency = input.readZigzag();
+
+                int shape = withShape ? input.readVarint() : 0;
+                loader.node(keyword, length, frequency, shape >>> 1, (shape & 1) == 1);
+            }
+
+            input.verifyChecksum(file);
+            return withShape;
+        }
+    }
+}
@@ -0,0 +1,264 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Approximate keyword counter using the Space-Saving algorithm with a
+ * fixed number of counters. When all counters are in use, a new keyword
+ * takes the counter with the smallest count and inherits that count as its
+ * error. With m counters, a count is larger than the true count by at most
+ * N / m, where N is the sum of all frequencies. All memory is allocated when
+ * the counter is created, except for keywords longer than any seen before.
+ *
+ * Optionally a Count-Min sketch decides which new keywords are admitted: a
+ * keyword only takes the smallest counter if its sketch estimate is larger
+ * than that counter, so rare keywords don't push out the monitored ones.
+ *
+ * Since frequencies can be larger than 1, the counters are ordered with a
+ * binary min heap instead of the bucket list of equal counts.
+ */
+public class SpaceSavingCounter implements KeywordListener {
+
+    private final int capacity;     // number of counters
+    private final byte[][] keys;    // keyword of each counter
+    private final int[] keyLength;
+    private final int[] keyHash;
+    private final int[] count;      // estimated frequency of each counter
+    private final int[] error;      // largest possible overestimate of each counter
+    private int size;               // counters in use
+
+    private final int[] minHeap;    // counters ordered by count
+    private final int[] heapIndex;  // position of each counter in minHeap
+
+    private final int[] table;      // counter + 1 in each slot, 0 if empty
+    private final int mask;
+
+    private final CountMinSketch sketch;    // admission filter, null if not used
+    private final BufferedWriter fileWriter;
+
+    private int nextCount;      // upper bound of the words outside the last topK() answer
+    private int[] lastOrder;    // counters of the last topK() answer in order
+
+    /**
+     * @param epsilon   -   largest overestimate as a fraction of the total frequency
+     * @param useSketch -   whether new keywords are admitted using a Count-Min sketch
+     * @param fileWriter    -   writer for the query results
+     */
+    public SpaceSavingCounter(double epsilon, boolean useSketch, BufferedWriter fileWriter){
+        this.capacity = (int) Math.ceil(1 / epsilon);
+        this.fileWriter = fileWriter;
+
+        keys = new byte[capacity][];
+        keyLength = new int[capacity];
+        keyHash = new int[capacity];
+        count = new int[capacity];
+        error = new int[capacity];
+        minHeap = new int[capacity];
+        heapIndex = new int[capacity];
+
+        // at most half of the slots are used
+        table = new int[Integer.highestOneBit(capacity) * 4];
+        mask = table.length - 1;
+
+        sketch = useSketch ? CountMinSketch.withError(epsilon) : null;
+    }
+
+    @Override
+    public void addKeyword(byte[] bytes, int offset, int length, int frequency){
+        int hash = KeywordDictionary.hash(bytes, offset, length);
+        long estimate = sketch == null ? 0 : sketch.add(hash, frequency);
+
+        int slot = findSlot(bytes, offset, length, hash);
+        if(table[slot] != 0){
+            int counter = table[slot] - 1;
+            count[counter] += frequency;
+            siftDown(heapIndex[counter]);
+            siftUp(heapIndex[counter]);
+            return;
+        }
+
+        if(size < capacity){
+            int counter = size++;
+            setKey(counter, bytes, offset, length, hash);
+            table[slot] = counter + 1;
+            count[counter] = frequency;
+            error[counter] = 0;
+            minHeap[counter] = counter;
+            heapIndex[counter] = counter;
+            siftUp(counter);
+            return;
+        }
+
+        int counter = minHeap[0];
+        int minCount = count[counter];
+
+        // the sketch estimate is never below the true count, so a rejected keyword has at most minCount
+        if(sketch != null && estimate <= minCount)
+            return;
+
+        removeFromTable(counter);
+        setKey(counter, bytes, offset, length, hash);
+        table[findSlot(bytes, offset, length, hash)] = counter + 1;
+        count[counter] = minCount + frequency;
+        error[counter] = minCount;
+        siftDown(0);
+    }
+
+    @Override
+    public void query(int K) throws IOException{
+        List<Node> topK = topK(K);
+        keywordcounter.writeOutput(topK, fileWriter);
+
+        // report the words which are surely in the top K
+        StringBuilder guaranteed = new StringBuilder("guaranteed:");
+        char separator = ' ';
+        for(int i = 0; i < topK.size(); ++i){
+            if(isGuaranteed(i)){
+                guaranteed.append(separator).append(topK.get(i).getWord());
+                separator = ',';
+            }
+        }
+        System.err.println(guaranteed);
+    }
+
+    /**
+     * Returns the top K counters as nodes holding the word and the estimated frequency.
+     * @param K -   number of words to return
+     */
+    public List<Node> topK(int K){
+        // keeps the best K + 1 counters, the smallest one first
+        PriorityQueue<Integer> best = new PriorityQueue<>((a, b) -> compare(b, a));
+        for(int counter = 0; counter < size; ++counter){
+            best.add(counter);
+            if(best.size() > K + 1)
+                best.poll();
+        }
+
+        int[] order = new int[best.size()];
+        for(int i = order.length - 1; i >= 0; --i)
+            order[i] = best.poll();
+
+        List<Node> topK = new ArrayList<>();
+        for(int i = 0; i < Math.min(K, order.length); ++i)
+            topK.add(new Node(new String(keys[order[i]], 0, keyLength[order[i]], StandardCharsets.UTF_8), count[order[i]]));
+
+        // the (K + 1)-th count is an upper bound for every word outside the answer
+        nextCount = order.length > K ? count[order[K]] : (size == capacity ? count[minHeap[0]] : 0);
+        lastOrder = order;
+        return topK;
+    }
+
+    /**
+     * Tells if a word of the last answer is surely in the true top K: its
+     * smallest possible frequency is at least the largest possible frequency
+     * of every word outside the answer.
+     * @param index -   position of the word in the last answer
+     */
+    public boolean isGuaranteed(int index){
+        int counter = lastOrder[index];
+        return count[counter] - error[counter] >= nextCount;
+    }
+
+    /**
+     * Orders counters by decreasing count, then by keyword bytes.
+     */
+    private int compare(int counter, int otherCounter){
+        if(count[counter] != count[otherCounter])
+            return Integer.compare(count[otherCounter], count[counter]);
+        return Arrays.compareUnsigned(keys[counter], 0, keyLength[counter],
+                keys[otherCounter], 0, keyLength[otherCounter]);
+    }
+
+    public int getCapacity(){
+        return capacity;
+    }
+
+    /**
+     * @return  -   bytes allocated for the counters, the table and the sketch,
+     *              not counting the keyword bytes
+     */
+    public long memory(){
+        return capacity * (6 * 4L + 8) + table.length * 4L + (sketch == null ? 0 : sketch.memory());
+    }
+
+    /**
+     * Finds the slot of the keyword, or the empty slot where it would go.
+     */
+    private int findSlot(byte[] bytes, int offset, int length, int hash){
+        int slot = hash & mask;
+        while(table[slot] != 0){
+            int counter = table[slot] - 1;
+            if(keyHash[counter] == hash && keyLength[counter] == length
+                    && Arrays.equals(keys[counter], 0, length, bytes, offset, offset + length))
+                return slot;
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Removes the counter from the table, moving back the following
+     * entries of the probe sequence so that no tombstone is needed.
+     */
+    private void removeFromTable(int counter){
+        int slot = keyHash[counter] & mask;
+        while(table[slot] != counter + 1)
+            slot = (slot + 1) & mask;
+
+        int next = (slot + 1) & mask;
+        while(table[next] != 0){
+            int home = keyHash[table[next] - 1] & mask;
+            // move the entry back if its home slot is not between the hole and the entry
+            if(((next - home) & mask) >= ((next - slot) & mask)){
+                table[slot] = table[next];
+                slot = next;
+            }
+            next = (next + 1) & mask;
+        }
+        table[slot] = 0;
+    }
+
+    private void setKey(int counter, byte[] bytes, int offset, int length, int hash){
+        if(keys[counter] == null || keys[counter].length < length)
+            keys[counter] = new byte[Math.max(length, 16)];
+        System.arraycopy(bytes, offset, keys[counter], 0, length);
+        keyLength[counter] = length;
+        keyHash[counter] = hash;
+    }
+
+    private void siftUp(int index){
+        int counter = minHeap[index];
+        while(index > 0){
+            int parent = (index - 1) >>> 1;
+            if(count[minHeap[parent]] <= count[counter])
+                break;
+            minHeap[index] = minHeap[parent];
+            heapIndex[minHeap[index]] = index;
+            index = parent;
+        }
+        minHeap[index] = counter;
+        heapIndex[counter] = index;
+    }
+
+    private void siftDown(int index){
+        int counter = minHeap[index];
+        while(true){
+            int child = 2 * index + 1;
+            if(child >= size)
+                break;
+            if(child + 1 < size && count[minHeap[child + 1]] < count[minHeap[child]])
+                ++child;
+            if(count[minHeap[child]] >= count[counter])
+                break;
+            minHeap[index] = minHeap[child];
+            heapIndex[minHeap[index]] = index;
+            index = child;
+        }
+        minHeap[index] = counter;
+        heapIndex[counter] = index;
+    }
+}
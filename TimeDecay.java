@@ -0,0 +1,84 @@
+/**
+ * Exponential decay of the keyword counts with a half-life, with time
+ * counted in keyword lines. Instead of decaying every count as time goes
+ * on, each increment is scaled up by 2^((line - landmark) / halfLife), so
+ * the counts kept by the heap are the decayed counts times the current
+ * scale, and their order is the order of the decayed counts. The factor is
+ * computed once per line, so every increment of a line is scaled alike;
+ * each is then rounded to the nearest integer on its own.
+ *
+ * The scale and the largest count grow without bound, so once the scale
+ * reaches 2^MAX_SCALE_BITS or a count gets close to overflowing, every
+ * count is shifted right. The landmark moves forward by the whole half
+ * lives since it, never past the current line. If that shift does not
+ * bring the counts low enough, they are halved further and the extra
+ * halvings are kept apart, dividing the scale until later landmark moves
+ * take them back. A right shift keeps the order of two counts only
+ * weakly: a larger count never becomes smaller, but two close counts may
+ * become equal and are then ordered by word like any tie. The heap
+ * property still holds, so the heap needs no restructuring, and this
+ * happens only once every many half lives.
+ */
+public class TimeDecay {
+
+    private static final int MAX_SCALE_BITS = 12;           // half lives between two rescales
+    private static final int MAX_FREQUENCY = 1 << 29;       // counts above this are rescaled before they overflow
+
+    private final double halfLife;      // keyword lines after which a count is halved
+    private double landmark;            // keyword line at which the scale is 1 without extra halvings, never after the current line
+    private int halvings;               // times the counts were halved on top of the landmark moves
+    private long factorLine = -1;       // keyword line of the cached factor, -1 if there is none
+    private double factor;              // scale of the increments of factorLine
+
+    /**
+     * @param halfLife  -   keyword lines after which a count is halved
+     */
+    public TimeDecay(double halfLife){
+        this.halfLife = halfLife;
+    }
+
+    /**
+     * Scales the increment of a keyword line. The result is not cast to an
+     * int, since it may be too large for one until the counts are rescaled.
+     * The factor of the line is only computed by its first call, and again
+     * after a rescale.
+     * @param line  -   number of the keyword line
+     * @param frequency -   increment on the line
+     * @return  -   increment to add to the count
+     */
+    public long scale(long line, int frequency){
+        if(line != factorLine){
+            factor = Math.pow(2, (line - landmark) / halfLife - halvings);
+            factorLine = line;
+        }
+        return Math.round(frequency * factor);
+    }
+
+    /**
+     * Tells by how many bits every count has to be shifted right. The
+     * landmark moves forward by exactly the whole half lives since it, and
+     * the counts are halved further if they are still too large.
+     * @param line  -   number of the current keyword line
+     * @param largest   -   largest count, including the one about to be reached
+     * @return  -   bits of the right shift, 0 if the counts are kept, which
+     *              only happens when largest is below MAX_FREQUENCY
+     */
+    public int rescale(long line, long largest){
+        long bits = (long) ((line - landmark) / halfLife);
+        if(bits < MAX_SCALE_BITS && largest < MAX_FREQUENCY)
+            return 0;
+
+        landmark = Math.min(landmark + bits * halfLife, line);
+        factorLine = -1;
+        // the landmark move first takes back the extra halvings
+        int takenBack = (int) Math.min(halvings, bits);
+        halvings -= takenBack;
+        long shift = bits - takenBack;
+        while(shift < 63 && (largest >> shift) >= MAX_FREQUENCY){
+            ++shift;
+            ++halvings;
+        }
+        // an int count is 0 after a shift of 31
+        return (int) Math.min(shift, 31);
+    }
+}
@@ -0,0 +1,109 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Standing top K query kept beside the heap. The tracker holds the current
+ * K winners in TOP_K_ORDER, and the last winner is the admission threshold.
+ * After each insert or increaseKey the node is passed to update(). A node
+ * below the threshold is rejected with one comparison, a winner only moves
+ * up in the list, and any other node replaces the last winner. A query for
+ * K or fewer words is then answered by copying the winners.
+ *
+ * The winners can't be kept up to date if a winner's frequency decreases,
+ * since the node which should replace it is unknown. The tracker is then
+ * marked stale and is refreshed from the heap on the next query.
+ */
+public class TopKTracker {
+
+    private final int k;
+    private final Node[] winners;   // current winners in TOP_K_ORDER
+    private int count;              // number of winners, less than k only if there are fewer nodes
+    private boolean stale;          // true if the winners have to be refreshed from the heap
+
+    /**
+     * @param k -   number of words tracked
+     */
+    public TopKTracker(int k){
+        this.k = k;
+        this.winners = new Node[k];
+    }
+
+    /**
+     * Updates the winners after the node was inserted or its frequency changed.
+     * @param node  -   node which was inserted or updated
+     * @param frequency -   amount by which the frequency was changed
+     */
+    public void update(Node node, int frequency){
+        if(stale || k == 0)
+            return;
+
+        int index = node.getTrackerIndex();
+
+        if(index >= 0){
+            if(frequency < 0){
+                stale = true;
+                return;
+            }
+            moveUp(node, index);
+        }else if(count < k){
+            winners[count] = node;
+            moveUp(node, count++);
+        }else if(MaxFibonacciHeap.TOP_K_ORDER.compare(node, winners[k - 1]) < 0){
+            // the node takes the place of the last winner
+            winners[k - 1].setTrackerIndex(-1);
+            winners[k - 1] = node;
+            moveUp(node, k - 1);
+        }
+    }
+
+    /**
+     * Moves the node towards the first winner until the order is restored.
+     */
+    private void moveUp(Node node, int index){
+        while(index > 0 && MaxFibonacciHeap.TOP_K_ORDER.compare(node, winners[index - 1]) < 0){
+            winners[index] = winners[index - 1];
+            winners[index].setTrackerIndex(index);
+            --index;
+        }
+        winners[index] = node;
+        node.setTrackerIndex(index);
+    }
+
+    /**
+     * Replaces the winners with the top k nodes of the heap.
+     * @param topK  -   top k nodes from MaxFibonacciHeap.topK()
+     */
+    public void refresh(List<Node> topK){
+        for(int i = 0; i < count; ++i){
+            winners[i].setTrackerIndex(-1);
+            winners[i] = null;
+        }
+
+        count = 0;
+        for(Node node : topK){
+            winners[count] = node;
+            node.setTrackerIndex(count++);
+        }
+        stale = false;
+    }
+
+    /**
+     * Returns the top K winners in O(K).
+     * @param K -   number of words, at most the tracked k
+     */
+    public List<Node> topK(int K){
+        int size = Math.min(K, count);
+        List<Node> topK = new ArrayList<>(size);
+        for(int i = 0; i < size; ++i)
+            topK.add(winners[i]);
+        return topK;
+    }
+
+    public int getK(){
+        return k;
+    }
+
+    public boolean isStale(){
+        return stale;
+    }
+}
@@ -0,0 +1,127 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Copy-on-write store of the keyword frequencies, indexed by keyword id.
+ * The frequencies are kept in pages. Taking a view only copies the page
+ * table and starts a new version; the first write to a page after that
+ * copies the page, so the view keeps seeing the frequencies it was taken
+ * with. Views are immutable and can be read from any thread while the
+ * owner keeps writing.
+ *
+ * Only one thread may call the methods of the store itself.
+ */
+public class VersionedCounts {
+
+    private static final int PAGE_BITS = 10;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;     // keywords in a page
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+    private int[][] countPages = new int[16][];
+    private long[] pageVersion = new long[16];          // version in which the count page was last copied
+    private long version;
+    private int size;
+
+    /**
+     * Point in time view of the frequencies.
+     */
+    public static final class View {
+        private final int[][] countPages;
+        private final KeywordDictionary keywords;
+        private final int size;
+
+        private View(int[][] countPages, KeywordDictionary keywords, int size){
+            this.countPages = countPages;
+            this.keywords = keywords;
+            this.size = size;
+        }
+
+        public int size(){
+            return size;
+        }
+
+        public int getFrequency(int id){
+            return countPages[id >>> PAGE_BITS][id & PAGE_MASK];
+        }
+
+        public String getWord(int id){
+            return keywords.getKeyword(id);
+        }
+
+        /**
+         * Returns the top K words of the view in TOP_K_ORDER. There is no
+         * index over a view, so this scans every frequency with a heap of K
+         * nodes: O(n log K) for n keywords, paid by the reader's thread.
+         * @param K -   number of words to return
+         */
+        public List<Node> topK(int K){
+            // the worst of the best K nodes is at the head
+            PriorityQueue<Node> best = new PriorityQueue<>(Math.max(K, 1), MaxFibonacciHeap.TOP_K_ORDER.reversed());
+
+            for(int id = 0; id < size; ++id){
+                int frequency = getFrequency(id);
+                if(best.size() == K){
+                    Node worst = best.peek();
+                    if(K == 0 || frequency < worst.getFrequency()
+                            || (frequency == worst.getFrequency() && keywords.compare(id, worst.getKeywordId()) > 0))
+                        continue;
+                    best.poll();
+                }
+                best.add(new Node(keywords, id, frequency));
+            }
+
+            List<Node> topK = new ArrayList<>(best);
+            topK.sort(MaxFibonacciHeap.TOP_K_ORDER);
+            return topK;
+        }
+    }
+
+    /**
+     * Adds a keyword with frequency 0. The keyword itself stays in the
+     * dictionary under the same id.
+     * @return  -   id of the keyword, ids are given in order from 0
+     */
+    public int add(){
+        int page = size >>> PAGE_BITS;
+        if(page == countPages.length){
+            countPages = Arrays.copyOf(countPages, page * 2);
+            pageVersion = Arrays.copyOf(pageVersion, page * 2);
+        }
+        if(countPages[page] == null){
+            countPages[page] = new int[PAGE_SIZE];
+            pageVersion[page] = version;
+        }
+        return size++;
+    }
+
+    /**
+     * Sets the frequency of the keyword, copying its page if a view shares it.
+     * @param id    -   keyword id
+     * @param frequency -   new frequency
+     */
+    public void set(int id, int frequency){
+        int page = id >>> PAGE_BITS;
+        if(pageVersion[page] != version){
+            countPages[page] = countPages[page].clone();
+            pageVersion[page] = version;
+        }
+        countPages[page][id & PAGE_MASK] = frequency;
+    }
+
+    public int size(){
+        return size;
+    }
+
+    /**
+     * Takes a view of the current frequencies. Costs one copy of the page
+     * table, the pages are copied later by the writes which need it.
+     * @param keywords  -   shared dictionary resolving the keyword ids, see KeywordDictionary.share()
+     */
+    public View view(KeywordDictionary keywords){
+        View view = new View(countPages.clone(), keywords, size);
+        ++version;
+        return view;
+    }
+}
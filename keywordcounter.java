@@ -1,8 +1,5 @@
 import java.io.*;
-import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 /**
  *  Keywordcounter program finds top K word.
@@ -10,99 +7,754 @@ import java.util.Map;
  *  @author Nimit Patel
  *          npatel1@ufl.edu
  */
-public class keywordcounter {
+public class keywordcounter implements KeywordListener {
 
+    private KeywordDictionary dictionary = new KeywordDictionary();
+    private KeywordEngine engine;                       // keeps the frequencies ordered
+    private FibonacciEngine fibonacci;                  // the engine if it is the Fibonacci heap, null otherwise
+    private final BufferedWriter fileWriter;
+
+    private IncrementBuffer increments;                 // pending increments, null if not coalescing
+    private TopKTracker tracker;                        // standing top K query, null if not tracking
+    private VersionedCounts counts;                     // frequencies for views, null if not kept
+    private PrefixIndex prefixes;                       // trie for prefix queries, null if not indexed
+    private RankIndex ranks;                            // order statistics for count and rank queries, null if not indexed
+    private EvictionIndex eviction;                     // coldest keywords first, null if nothing is evicted
+    private int maxKeywords;                            // keywords kept before evicting
+    private long maxMemory;                             // estimated bytes kept before evicting
+    private long evictions;                             // number of keywords evicted
+    private SlidingWindow window;                       // increments of the epochs in the window, null if counts never expire
+    private TimeDecay decay;                            // scales the increments, null if counts never decay
+    private HeapMetrics metrics;                        // measurements, null if not measured
+    private long keywordLines;                          // number of keyword lines seen
+    private long heapOperations;                        // number of inserts and increaseKeys done
+
+    // estimated bytes of one keyword besides its bytes: node, dictionary, engine and eviction index entries
+    private static final int KEYWORD_OVERHEAD = 112;
+
+    public keywordcounter(BufferedWriter fileWriter){
+        this.fileWriter = fileWriter;
+        this.fibonacci = new FibonacciEngine(dictionary);
+        this.engine = fibonacci;
+    }
+
+    /**
+     * Reads the options, then counts one input file, merges several or
+     * serves the counter, as CounterOptions and CounterModes describe.
+     */
     public static void main(String[] args){
+        CounterOptions options;
+        try{
+            options = CounterOptions.parse(args);
+        }catch (IllegalArgumentException iae){
+            System.out.println(iae.getMessage());
+            return;
+        }
+
+        String[] files = options.files;
+        if(options.merge > 0 && files.length > 0)
+            CounterModes.merge(files, options.merge);
+        else if(options.server > 0 && files.length == 0)
+            CounterModes.serve(options);
+        else if(files.length == 1 && !files[0].startsWith("--"))
+            CounterModes.count(options, new File(files[0]));
+        else
+            System.out.print(CounterOptions.USAGE);
+    }
+
+    /**
+     * Replaces the engine, the counter must be empty.
+     * @param name  -   engine name accepted by KeywordEngine.create()
+     */
+    public void useEngine(String name){
+        engine = KeywordEngine.create(name, dictionary);
+        fibonacci = engine instanceof FibonacciEngine ? (FibonacciEngine) engine : null;
+        if(fibonacci != null)
+            fibonacci.getHeap().setMetrics(metrics);
+    }
+
+    /**
+     * Measures the heap operations, the queries and the dictionary lookups
+     * from now on. Heap operations are only measured with the fib engine.
+     * @return  -   the measurements, which can also be registered with JMX
+     */
+    public HeapMetrics measure(){
+        metrics = new HeapMetrics();
+        if(fibonacci != null)
+            fibonacci.getHeap().setMetrics(metrics);
+        return metrics;
+    }
+
+    /**
+     * Checks that the engine is the Fibonacci heap, which the feature needs.
+     */
+    private void requireFibonacci(String feature){
+        if(fibonacci == null)
+            throw new IllegalStateException(feature + " needs the fib engine");
+    }
+
+    private void rejectEviction(String feature){
+        if(eviction != null)
+            throw new IllegalStateException(feature + " does not work with eviction");
+    }
+
+    private void rejectExpiry(String feature){
+        if(window != null || decay != null)
+            throw new IllegalStateException(feature + " does not work with windows or decay");
+    }
+
+    /**
+     * Buffers the increments so that a keyword seen many times between
+     * two queries gets only one heap operation. The buffer is applied to
+     * the heap before each query or when it holds bufferSize keywords.
+     * @param bufferSize    -   number of distinct keywords buffered
+     */
+    public void coalesceIncrements(int bufferSize){
+        rejectEviction("Coalescing");
+        increments = new IncrementBuffer(bufferSize);
+    }
+
+    /**
+     * Registers a standing top K query. Queries for K or fewer words are
+     * then answered from the tracked winners without touching the heap.
+     * @param K -   number of words tracked
+     */
+    public void trackTopK(int K){
+        requireFibonacci("Tracking");
+        rejectEviction("Tracking");
+        tracker = new TopKTracker(K);
+        tracker.refresh(topK(K));
+    }
+
+    /**
+     * Writes the keywords and their frequencies to a snapshot file.
+     * @param file  -   snapshot file
+     * @param withShape -   whether the heap shape is saved too, so that loading gives the same heap
+     */
+    public void saveSnapshot(File file, boolean withShape) throws IOException{
+        requireFibonacci("Snapshots");
+        rejectExpiry("Snapshots");
+        if(increments != null)
+            increments.flush(this::update);
+        Snapshot.save(fibonacci.getHeap(), dictionary, withShape, file);
+    }
+
+    /**
+     * Loads the keywords of a snapshot into this counter, which must be
+     * empty. The heap is built in one pass instead of inserting each keyword.
+     * The snapshot is read into a new dictionary and engine, which replace
+     * the current ones only once the whole file was read, so a corrupt
+     * snapshot leaves the counter as it was.
+     * @param file  -   snapshot file
+     */
+    public void loadSnapshot(File file) throws IOException{
+        requireFibonacci("Snapshots");
+        rejectExpiry("Snapshots");
+        KeywordDictionary[] loaded = new KeywordDictionary[1];
+        FibonacciEngine[] loadedEngine = new FibonacciEngine[1];
+        Node[][] nodes = new Node[1][];
+        int[][] degrees = new int[1][];
+
+        Snapshot.load(file, new Snapshot.Loader() {
+            @Override
+            public void start(int count){
+                loaded[0] = new KeywordDictionary(count);
+                loadedEngine[0] = new FibonacciEngine(loaded[0], count);
+                nodes[0] = new Node[count];
+                degrees[0] = new int[count];
+            }
+
+            @Override
+            public void node(byte[] keyword, int length, int frequency, int degree, boolean childCut){
+                // keyword ids follow the order of the snapshot
+                int id = loaded[0].getOrAdd(keyword, 0, length);
+                Node node = new Node(loaded[0], id, frequency);
+                node.setChildCut(childCut);
+                loadedEngine[0].setNode(id, node);
+                nodes[0][id] = node;
+                degrees[0][id] = degree;
+            }
+        });
+
+        loadedEngine[0].getHeap().load(nodes[0], degrees[0], loaded[0].size());
+        loadedEngine[0].getHeap().setMetrics(metrics);
+        dictionary = loaded[0];
+        fibonacci = loadedEngine[0];
+        engine = fibonacci;
+    }
+
+    /**
+     * Adds the counts of the other counter to this counter. Keywords counted
+     * only by the other counter keep their nodes, and its heap is melded into
+     * this heap. For keywords counted by both, increaseKey() adds the other
+     * frequency here, and the other heap is rebuilt without them before the
+     * meld. Every keyword of the other counter is visited, so a merge is
+     * O(m) for m keywords of the other counter, plus O(log n) amortized per
+     * shared keyword whose frequency moves up here. The rebuilt heap has
+     * every node as a root, so its meld is O(m) as well; without shared
+     * keywords the other heap is consolidated and the meld is O(log m).
+     * The other counter must not be used afterwards.
+     * @param other -   counter to merge into this counter
+     */
+    public void merge(keywordcounter other){
+        requireFibonacci("Merging");
+        other.requireFibonacci("Merging");
+        rejectEviction("Merging");
+        rejectExpiry("Merging");
+        if(increments != null)
+            increments.flush(this::update);
+        if(other.increments != null)
+            other.increments.flush(other::update);
+
+        Node[] survivors = new Node[other.dictionary.size()];
+        int survivorCount = 0;
 
-        if(args.length == 1){
-
-            // file to read
-            File inputFile = new File(args[0]);
-            // file to ouptut
-            File outputFile = new File("output_file.txt");
-
-            BufferedReader fileReader = null;
-            BufferedWriter fileWriter = null;
-
-            if(inputFile.exists()){
-
-                try {
-                    String inputFileLine = null;
-                    String word = null;
-                    int spaceIndex = -1;
-                    int frequency = 0;
-                    MaxFibonacciHeap heap = new MaxFibonacciHeap();
-                    Map<String, Node> wordToNode = new HashMap<>();
-
-                    fileReader = new BufferedReader(new FileReader(inputFile));
-                    fileWriter = new BufferedWriter(new FileWriter(outputFile));
-
-                    while((inputFileLine = fileReader.readLine()) != null){
-
-                        // parsing the inputFileLine
-                        if(inputFileLine.charAt(0) == '$'){
-                            // insertion/increaseKey operation is done
-
-                            // parse word and frequency
-                            spaceIndex = inputFileLine.indexOf(' ');
-                            word = inputFileLine.substring(1, spaceIndex);
-                            frequency = Integer.parseInt(inputFileLine.substring(spaceIndex + 1));
-
-                            // check if the word exist already
-                            if(wordToNode.containsKey(word)){
-                                // increment word count by frequency
-                                heap.increaseKey(wordToNode.get(word), frequency);
-                            }else{
-                                // normal insert at the top level
-                                Node node = heap.insert(word, frequency);
-                                wordToNode.put(word, node);
-                            }
-
-                        }else if(Character.isDigit(inputFileLine.charAt(0))){
-                            // stores the top K nodes
-                            List<Node> topK = new ArrayList<>();
-                            int K = Integer.parseInt(inputFileLine);
-
-                            for(int i = 0; i < K; ++i){
-                                Node max = heap.removeMax();
-                                if(max != null){
-                                    topK.add(max);
-                                }else{
-                                    break;
-                                }
-                            }
-
-                            for(Node node : topK){
-                                heap.insert(node);
-                            }
-
-                            // create output file if it does not exist
-                            if(!outputFile.exists())
-                                outputFile.createNewFile();
-
-                            // writing to the output file
-                            writeOutput(topK, fileWriter);
-
-                        }else{
-                            // close read
-                            fileWriter.close();
-                            break;
-                        }
-                    }
-                    fileReader.close();
-                }catch (IOException ioe){
-                    System.out.println(ioe.getMessage());
-                }
+        for(int otherId = 0; otherId < other.dictionary.size(); ++otherId){
+            Node node = other.fibonacci.getNode(otherId);
+            if(node == null)
+                continue;
+
+            int size = dictionary.size();
+            int id = dictionary.getOrAdd(other.dictionary, otherId);
+            if(id < size && fibonacci.getNode(id) != null){
+                update(id, node.getFrequency());
             }else{
-                System.out.println(args[0] + " file doesn't exist!");
+                fibonacci.setNode(id, node);
+                node.setKeyword(dictionary, id);
+                node.setTrackerIndex(-1);
+                survivors[survivorCount++] = node;
+                if(prefixes != null)
+                    prefixes.add(id, node.getFrequency());
+                if(ranks != null)
+                    ranks.add(id, node.getFrequency());
+                if(tracker != null)
+                    tracker.update(node, node.getFrequency());
+                if(counts != null)
+                    addCount(id);
             }
+        }
+
+        // without shared keywords the other heap is melded as it is
+        MaxFibonacciHeap otherHeap = other.fibonacci.getHeap();
+        if(survivorCount < other.dictionary.size()){
+            otherHeap = new MaxFibonacciHeap();
+            for(int i = 0; i < survivorCount; ++i)
+                survivors[i].clear();
+            otherHeap.load(survivors, new int[survivorCount], survivorCount);
         }else{
-            System.out.print("Keyword counter takes exactly one argument!");
+            otherHeap.consolidate();
+        }
+        fibonacci.getHeap().meld(otherHeap);
+    }
+
+    /**
+     * Indexes the keywords in a trie, so that prefix queries can be answered.
+     * Keywords already counted are added to the trie.
+     * @param leaders   -   keywords cached per trie node, the largest K answered without scanning a subtree
+     */
+    public void indexPrefixes(int leaders){
+        rejectEviction("Prefix queries");
+        if(increments != null)
+            increments.flush(this::update);
+        prefixes = new PrefixIndex(dictionary, leaders);
+        for(int id = 0; fibonacci != null && id < dictionary.size(); ++id){
+            Node node = fibonacci.getNode(id);
+            if(node != null)
+                prefixes.add(id, node.getFrequency());
+        }
+    }
+
+    /**
+     * Keeps the order statistics of the frequencies, so that count, rank
+     * and threshold queries can be answered. Keywords already counted are
+     * added to the index.
+     */
+    public void indexRanks(){
+        if(increments != null)
+            increments.flush(this::update);
+        ranks = new RankIndex();
+        for(int id = 0; fibonacci != null && id < dictionary.size(); ++id){
+            Node node = fibonacci.getNode(id);
+            if(node != null)
+                ranks.add(id, node.getFrequency());
+        }
+    }
+
+    /**
+     * Keeps at most the given number of keywords, and at most about the
+     * given number of bytes for them. Once a limit is passed, the coldest
+     * keywords (the lowest frequency, and of those the least recently
+     * counted) are removed from the heap and the dictionary, and count
+     * from 0 if they are seen again. Eviction does not work with tracking,
+     * prefix queries, views or coalesced increments.
+     * @param maxKeywords   -   keywords kept, 0 for no limit
+     * @param maxMemory -   estimated bytes kept, 0 for no limit
+     */
+    public void limitKeywords(int maxKeywords, long maxMemory){
+        requireFibonacci("Eviction");
+        rejectExpiry("Eviction");
+        if(tracker != null || prefixes != null || counts != null || increments != null)
+            throw new IllegalStateException("Eviction does not work with tracking, prefix queries, views or coalescing");
+
+        this.maxKeywords = maxKeywords > 0 ? maxKeywords : Integer.MAX_VALUE;
+        this.maxMemory = maxMemory > 0 ? maxMemory : Long.MAX_VALUE;
+        eviction = new EvictionIndex();
+        for(int id = 0; id < dictionary.size(); ++id){
+            Node node = fibonacci.getNode(id);
+            if(node != null)
+                eviction.touch(id, node.getFrequency());
+        }
+        evictOverBudget();
+    }
+
+    /**
+     * Counts only the keyword lines of a sliding window made of the given
+     * number of epochs, the current one included. Time is counted in keyword
+     * lines. When an epoch leaves the window the increments of its keywords
+     * are subtracted with decreaseKey(), one per keyword it touched, and a
+     * keyword whose count gets to 0 is removed from the heap, the indexes and
+     * the dictionary. The counts so far stay. Windows do not work with views,
+     * since the ids of the removed keywords are reused.
+     * @param epochLines    -   keyword lines in an epoch
+     * @param epochs    -   epochs in the window
+     */
+    public void slideWindow(int epochLines, int epochs){
+        requireFibonacci("Windows");
+        rejectEviction("Windows");
+        if(decay != null || counts != null)
+            throw new IllegalStateException("Windows do not work with decay or views");
+        if(increments != null)
+            increments.flush(this::update);
+        window = new SlidingWindow(epochLines, epochs);
+        // the window starts with the next keyword line
+        window.advance(keywordLines + 1, this::apply);
+    }
+
+    /**
+     * Subtracts the increments of an epoch leaving the window from the
+     * keyword, and removes the keyword if it is no longer counted.
+     * @param id    -   keyword id
+     * @param frequency -   negated increments of the keyword in the epoch
+     * @param countedId -   id of the keyword line being counted, which is kept
+     */
+    private void expire(int id, int frequency, int countedId){
+        if(frequency != 0)
+            apply(id, frequency);
+
+        Node node = fibonacci.getNode(id);
+        if(id == countedId || node == null || node.getFrequency() != 0 || window.contains(id))
+            return;
+        // a winner of the tracker is already stale from the decrement
+        fibonacci.remove(id);
+        if(prefixes != null)
+            prefixes.remove(id);
+        if(ranks != null)
+            ranks.remove(id);
+        dictionary.remove(id);
+    }
+
+    /**
+     * Makes the counts decay exponentially with the given half-life, in
+     * keyword lines, by scaling the increments up instead of scaling the
+     * counts down. The frequencies kept are then the decayed counts times a
+     * scale, which only their order makes sense of.
+     * @param halfLife  -   keyword lines after which a count is halved
+     */
+    public void decayCounts(double halfLife){
+        requireFibonacci("Decay");
+        rejectEviction("Decay");
+        if(window != null || tracker != null || prefixes != null || ranks != null)
+            throw new IllegalStateException("Decay does not work with windows, tracking, prefix or rank queries");
+        decay = new TimeDecay(halfLife);
+    }
+
+    /**
+     * Shifts every count right, keeping the heap order. The pending
+     * increments are applied first, since they were scaled before.
+     * @param shift -   bits of the shift
+     */
+    private void rescale(int shift){
+        if(increments != null)
+            increments.flush(this::update);
+        for(int id = 0; id < dictionary.size(); ++id){
+            Node node = fibonacci.getNode(id);
+            if(node == null)
+                continue;
+            node.incrementFrequencyBy((node.getFrequency() >> shift) - node.getFrequency());
+            if(counts != null)
+                addCount(id);
+        }
+    }
+
+    /**
+     * Tells if keywords are evicted or expire out of a window. Their ids are
+     * then reused by other keywords.
+     */
+    public boolean evicts(){
+        return eviction != null || window != null;
+    }
+
+    /**
+     * Evicts the coldest keywords until the counter is within its limits.
+     */
+    private void evictOverBudget(){
+        while(eviction.size() > 0 && (eviction.size() > maxKeywords
+                || (long) eviction.size() * KEYWORD_OVERHEAD + dictionary.keywordBytes() > maxMemory)){
+            int id = eviction.poll();
+            fibonacci.remove(id);
+            if(ranks != null)
+                ranks.remove(id);
+            dictionary.remove(id);
+            ++evictions;
         }
     }
 
+    /**
+     * Keeps a copy-on-write copy of the frequencies, so that view() can
+     * give a point in time view for queries on other threads.
+     */
+    public void keepVersionedCounts(){
+        requireFibonacci("Versioned counts");
+        rejectEviction("Versioned counts");
+        if(window != null)
+            throw new IllegalStateException("Versioned counts do not work with windows");
+        counts = new VersionedCounts();
+        for(int id = 0; id < dictionary.size(); ++id){
+            Node node = fibonacci.getNode(id);
+            if(node != null)
+                counts.set(counts.add(), node.getFrequency());
+            else
+                counts.add();
+        }
+    }
+
+    /**
+     * Returns an immutable view of the current frequencies. Its topK() can
+     * run on another thread while this counter keeps being updated.
+     * Needs keepVersionedCounts().
+     */
+    public VersionedCounts.View view(){
+        if(increments != null)
+            increments.flush(this::update);
+        return counts.view(dictionary.share());
+    }
+
+    /**
+     * Increases the keyword frequency, inserting the keyword if it is new.
+     * @param bytes -   buffer containing the keyword
+     * @param offset    -   offset of the keyword
+     * @param length    -   length of the keyword
+     * @param frequency -   amount by which the frequency is incremented
+     */
+    @Override
+    public void addKeyword(byte[] bytes, int offset, int length, int frequency){
+        int count = dictionary.keywordCount();
+        int id = dictionary.getOrAdd(bytes, offset, length);
+        if(metrics != null)
+            metrics.recordLookup(dictionary.keywordCount() > count);
+        addKeyword(id, frequency);
+    }
+
+    /**
+     * Returns the id of the keyword, adding it to the dictionary if it is new.
+     * The keyword is only counted by addKeyword(). When keywords are evicted
+     * the id may be given to another keyword, so it is only used at once.
+     * @param bytes -   buffer containing the keyword
+     * @param offset    -   offset of the keyword
+     * @param length    -   length of the keyword
+     */
+    public int keywordId(byte[] bytes, int offset, int length){
+        return dictionary.getOrAdd(bytes, offset, length);
+    }
+
+    /**
+     * Increases the keyword frequency by the keyword id, with no dictionary lookup.
+     * @param id    -   keyword id given by keywordId()
+     * @param frequency -   amount by which the frequency is incremented
+     */
+    public void addKeyword(int id, int frequency){
+        ++keywordLines;
+
+        if(window != null && window.isNewEpoch(keywordLines)){
+            // the pending increments belong to the epoch which ends
+            if(increments != null)
+                increments.flush(this::update);
+            window.advance(keywordLines, (expired, change) -> expire(expired, change, id));
+        }
+        if(decay != null)
+            frequency = decayed(id, frequency);
+
+        if(increments == null){
+            update(id, frequency);
+        }else{
+            increments.add(id, frequency);
+            if(increments.isFull())
+                increments.flush(this::update);
+        }
+    }
+
+    /**
+     * Scales the increment of the keyword line by the decay. If the count of
+     * the keyword would get too large, every count is rescaled first, and
+     * the increment is scaled again until the counts are kept as they are.
+     * @param id    -   keyword id
+     * @param frequency -   increment on the line
+     * @return  -   scaled increment
+     */
+    private int decayed(int id, int frequency){
+        while(true){
+            long scaled = decay.scale(keywordLines, frequency);
+            Node max = fibonacci.getHeap().getMax();
+            Node node = fibonacci.getNode(id);
+            long count = (node == null ? 0 : node.getFrequency()) + (increments == null ? 0 : increments.get(id));
+            long largest = Math.max(max == null ? 0 : max.getFrequency(), Math.abs(count) + Math.abs(scaled));
+
+            // the counts are only kept while largest, which bounds the increment, is below TimeDecay.MAX_FREQUENCY
+            int shift = decay.rescale(keywordLines, largest);
+            if(shift == 0)
+                return (int) scaled;
+            rescale(shift);
+        }
+    }
+
+    /**
+     * Increases the frequency of the keyword in the heap, inserting it if it
+     * is new, and adds the increment to the current epoch of the window.
+     * @param id    -   keyword id
+     * @param frequency -   amount by which the frequency is incremented
+     */
+    private void update(int id, int frequency){
+        if(window != null)
+            window.add(id, frequency);
+        apply(id, frequency);
+    }
+
+    /**
+     * Changes the frequency of the keyword in the heap and in the indexes, inserting it if it is new.
+     * @param id    -   keyword id
+     * @param frequency -   amount by which the frequency is changed
+     */
+    private void apply(int id, int frequency){
+        ++heapOperations;
+        engine.add(id, frequency);
+
+        if(tracker != null)
+            tracker.update(fibonacci.getNode(id), frequency);
+        if(counts != null)
+            addCount(id);
+        if(prefixes != null)
+            prefixes.add(id, frequency);
+        if(ranks != null)
+            ranks.add(id, frequency);
+        if(eviction != null){
+            eviction.touch(id, fibonacci.getNode(id).getFrequency());
+            evictOverBudget();
+        }
+    }
+
+    /**
+     * Copies the frequency of the keyword to the versioned counts.
+     */
+    private void addCount(int id){
+        // with coalescing, new ids may reach the heap out of order
+        while(counts.size() < id)
+            counts.add();
+        if(counts.size() == id)
+            counts.add();
+        counts.set(id, fibonacci.getNode(id).getFrequency());
+    }
+
+    /**
+     * Writes the top K words to the output file.
+     * @param K -   number of words to write
+     */
+    @Override
+    public void query(int K) throws IOException{
+        if(fileWriter == null)
+            return;
+        long start = metrics == null ? 0 : System.nanoTime();
+        List<Node> topK = topK(K);
+        if(metrics != null)
+            metrics.recordQuery(System.nanoTime() - start, K);
+        // writing to the output file
+        writeOutput(topK, fileWriter);
+    }
+
+    /**
+     * Writes the top K words starting with the prefix to the output file.
+     * @param bytes -   buffer containing the prefix
+     * @param offset    -   offset of the prefix in the buffer
+     * @param length    -   length of the prefix
+     * @param K -   number of words to write
+     */
+    @Override
+    public void prefixQuery(byte[] bytes, int offset, int length, int K) throws IOException{
+        if(prefixes == null)
+            throw new IOException("Prefix queries need --prefix N");
+        if(fileWriter == null)
+            return;
+        long start = metrics == null ? 0 : System.nanoTime();
+        List<Node> topK = topK(bytes, offset, length, K);
+        if(metrics != null)
+            metrics.recordQuery(System.nanoTime() - start, K);
+        writeOutput(topK, fileWriter);
+    }
+
+    /**
+     * Returns the top K nodes whose words start with the prefix. Needs indexPrefixes().
+     * @param bytes -   buffer containing the prefix
+     * @param offset    -   offset of the prefix in the buffer
+     * @param length    -   length of the prefix
+     * @param K -   number of nodes to return
+     */
+    public List<Node> topK(byte[] bytes, int offset, int length, int K){
+        if(prefixes == null)
+            throw new IllegalStateException("Prefix queries need --prefix N");
+        if(increments != null)
+            increments.flush(this::update);
+        return prefixes.topK(bytes, offset, length, K);
+    }
+
+    /**
+     * Writes the frequency of the keyword to the output file.
+     */
+    @Override
+    public void countQuery(byte[] bytes, int offset, int length) throws IOException{
+        if(ranks == null)
+            throw new IOException("Count queries need --ranks");
+        int count = count(bytes, offset, length);
+        if(fileWriter != null)
+            writeLine(count + "\n", fileWriter);
+    }
+
+    /**
+     * Writes the rank of the keyword to the output file.
+     */
+    @Override
+    public void rankQuery(byte[] bytes, int offset, int length) throws IOException{
+        if(ranks == null)
+            throw new IOException("Rank queries need --ranks");
+        int rank = rank(bytes, offset, length);
+        if(fileWriter != null)
+            writeLine(rank + "\n", fileWriter);
+    }
+
+    /**
+     * Writes the number of keywords with a frequency of at least the threshold to the output file.
+     */
+    @Override
+    public void thresholdQuery(int threshold) throws IOException{
+        if(ranks == null)
+            throw new IOException("Threshold queries need --ranks");
+        int count = countAtLeast(threshold);
+        if(fileWriter != null)
+            writeLine(count + "\n", fileWriter);
+    }
+
+    /**
+     * Returns the frequency of the keyword. Needs indexRanks().
+     * @return  -   the frequency, 0 if the keyword was never counted
+     */
+    public int count(byte[] bytes, int offset, int length){
+        int id = rankedId(bytes, offset, length);
+        return id == KeywordDictionary.NOT_FOUND ? 0 : ranks.getFrequency(id);
+    }
+
+    /**
+     * Returns the rank of the keyword, one more than the number of keywords
+     * with a higher frequency. Needs indexRanks().
+     * @return  -   the rank, 0 if the keyword was never counted
+     */
+    public int rank(byte[] bytes, int offset, int length){
+        int id = rankedId(bytes, offset, length);
+        return id == KeywordDictionary.NOT_FOUND ? 0 : ranks.rank(id);
+    }
+
+    /**
+     * Returns the number of keywords with a frequency of at least the threshold. Needs indexRanks().
+     */
+    public int countAtLeast(int threshold){
+        rankedId(null, 0, 0);
+        return ranks.countAtLeast(threshold);
+    }
+
+    /**
+     * Returns the number of keywords with a frequency larger than the given one. Needs indexRanks().
+     */
+    public int countAbove(int frequency){
+        rankedId(null, 0, 0);
+        return ranks.countAbove(frequency);
+    }
+
+    /**
+     * Brings the rank index up to date and finds the keyword in the dictionary.
+     * @param bytes -   buffer containing the keyword, null to only update the index
+     * @return  -   keyword id, NOT_FOUND if the keyword is not in the dictionary
+     */
+    private int rankedId(byte[] bytes, int offset, int length){
+        if(ranks == null)
+            throw new IllegalStateException("Count, rank and threshold queries need --ranks");
+        if(increments != null)
+            increments.flush(this::update);
+        return bytes == null ? KeywordDictionary.NOT_FOUND : dictionary.find(bytes, offset, length);
+    }
+
+    /**
+     * Returns the top K nodes, the engine is left unchanged.
+     * @param K -   number of nodes to return
+     */
+    public List<Node> topK(int K){
+        if(increments != null)
+            increments.flush(this::update);
+
+        if(tracker != null && K <= tracker.getK()){
+            if(tracker.isStale())
+                tracker.refresh(engine.topK(tracker.getK()));
+            return tracker.topK(K);
+        }
+
+        return engine.topK(K);
+    }
+
+    public long getKeywordLines(){
+        return keywordLines;
+    }
+
+    public long getHeapOperations(){
+        return heapOperations;
+    }
+
+    public long getEvictions(){
+        return evictions;
+    }
+
+    /**
+     * @return  -   number of keywords counted and not evicted
+     */
+    public int getKeywordCount(){
+        return dictionary.keywordCount();
+    }
 
     public static void writeOutput(List<Node> topK, BufferedWriter fileWriter) throws IOException{
+        writeLine(toLine(topK), fileWriter);
+    }
+
+    /**
+     * Prints the answer line and writes it to the output file.
+     * @param line  -   answer ending with a new line
+     */
+    public static void writeLine(String line, BufferedWriter fileWriter) throws IOException{
+        System.out.println(line);
+
+        fileWriter.write(line);
+    }
+
+    /**
+     * Formats the words of the nodes as one output line.
+     * @param topK  -   nodes in the order they are written
+     * @return  -   the words separated by commas, followed by a new line
+     */
+    public static String toLine(List<Node> topK){
         char separator = ',';
 
         StringBuilder topKWords = new StringBuilder();
@@ -117,9 +769,7 @@ public class keywordcounter {
 
         topKWords.append('\n');
 
-        System.out.println(topKWords.toString());
-
-        fileWriter.write(topKWords.toString());
+        return topKWords.toString();
     }
 
 }
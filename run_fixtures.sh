@@ -0,0 +1,78 @@
+#!/bin/bash
+# Runs keywordcounter on each fixture and compares the output file with the
+# expected one. For a fixture NAME, fixtures/NAME.txt (or NAME.kwcl for a
+# binary log) is the input file, fixtures/NAME.out the expected
+# output_file.txt and fixtures/NAME.args the options, if any.
+#
+# Each line of NAME.args is one run on the input in the same directory, so
+# that a run can load what the one before saved; the output file of the
+# last run is compared. {fixtures} in a line is replaced by the fixtures
+# directory. A line which does not start with an option names another main
+# class to run, such as FixtureDriver. With --server PORT the input is sent
+# to the server over TCP and its answers are compared instead.
+#
+# Fixtures whose name starts with the name given as the first argument are
+# run, all of them if no name is given.
+
+cd "$(dirname "$0")" || exit 1
+root=$(pwd)
+build=$(mktemp -d) || exit 1
+trap 'rm -rf "$build"' EXIT
+classes=$build/classes
+work=$build/work
+javac -Xlint:none -d "$classes" *.java || exit 1
+
+# runs one line of options on the input in the work directory
+run(){
+    local options=${1//\{fixtures\}/$root/fixtures}
+    local input=$2
+    local main=keywordcounter
+    if [ -n "$options" ] && [[ $options != --* ]]; then
+        main=${options%% *}
+        options=${options#"$main"}
+    fi
+
+    if [[ $options =~ --server\ ([0-9]+) ]]; then
+        local port=${BASH_REMATCH[1]}
+        # shellcheck disable=SC2086
+        (cd "$work" && exec java -cp "$classes" $main $options) < /dev/null > /dev/null 2>&1 &
+        local server=$!
+        for _ in $(seq 50); do
+            (exec 3<> "/dev/tcp/127.0.0.1/$port") 2> /dev/null && break
+            sleep 0.2
+        done
+        (
+            exec 3<> "/dev/tcp/127.0.0.1/$port" || exit 1
+            cat "$input" >&3
+            # the last line of the input ends the session and the server closes the connection
+            timeout 10 cat <&3 > "$work/output_file.txt"
+        ) 2> /dev/null
+        kill "$server" 2> /dev/null
+        wait "$server" 2> /dev/null
+    else
+        # shellcheck disable=SC2086
+        (cd "$work" && java -cp "$classes" $main $options "$input" < /dev/null > /dev/null 2>&1)
+    fi
+}
+
+failed=0
+for input in fixtures/"$1"*.txt fixtures/"$1"*.kwcl; do
+    [ -f "$input" ] || continue
+    name=$(basename "${input%.*}")
+    rm -rf "$work" && mkdir "$work"
+    if [ -f "fixtures/$name.args" ]; then
+        while IFS= read -r options || [ -n "$options" ]; do
+            run "$options" "$root/$input"
+        done < "fixtures/$name.args"
+    else
+        run "" "$root/$input"
+    fi
+
+    if cmp -s "$work/output_file.txt" "fixtures/$name.out"; then
+        echo "ok      $name"
+    else
+        echo "FAILED  $name"
+        failed=1
+    fi
+done
+exit $failed